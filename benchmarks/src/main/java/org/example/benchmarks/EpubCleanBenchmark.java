@@ -0,0 +1,60 @@
+package org.example.benchmarks;
+
+import org.example.EpubWatermarkCleaner;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// Очистка EPUB: потоковый проход по ZIP против старого пути через epublib (вся книга в памяти)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EpubCleanBenchmark {
+
+    @Param({"10", "100"})
+    public int chapters;
+
+    private File input;
+    private File output;
+    private EpubWatermarkCleaner cleaner;
+
+    @Setup
+    public void setup() throws IOException {
+        input = FixtureGenerator.epub(chapters);
+        output = File.createTempFile("bench-", ".epub");
+        cleaner = new EpubWatermarkCleaner();
+    }
+
+    @TearDown
+    public void tearDown() {
+        output.delete();
+    }
+
+    @Benchmark
+    public long clean() throws IOException {
+        cleaner.clean(input, output);
+        return output.length();
+    }
+
+    @Benchmark
+    public long cleanInMemory() throws IOException {
+        cleaner.cleanInMemory(input, output);
+        return output.length();
+    }
+}
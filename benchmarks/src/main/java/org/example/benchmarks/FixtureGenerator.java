@@ -0,0 +1,207 @@
+package org.example.benchmarks;
+
+import nl.siegmann.epublib.domain.Book;
+import nl.siegmann.epublib.domain.Resource;
+import nl.siegmann.epublib.epub.EpubWriter;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.graphics.image.JPEGFactory;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+// Синтетические входные файлы для замеров (строятся локально, в репозиторий не кладем).
+// Один и тот же набор параметров -> один и тот же файл: генерируем один раз и переиспользуем между запусками.
+public final class FixtureGenerator {
+
+    public enum Kind {
+        // Книга: много текста, на каждой второй странице сноска с водяным знаком, в конце рекламная страница
+        TEXT,
+        // Манга: только картинки, водяных знаков нет (очистка должна почти ничего не делать)
+        MANGA,
+        // Манга, где часть страниц — картинки с текстовым водяным знаком поверх
+        MANGA_WATERMARKED
+    }
+
+    private static final String WATERMARK = "OceanofPDF.com";
+    private static final String LOREM = "Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod tempor. ";
+
+    // Страница манги меньше листа — как в реальных сканах, где нужен ресайз
+    private static final int IMAGE_W = 900;
+    private static final int IMAGE_H = 1350;
+    private static final PDRectangle MANGA_PAGE = new PDRectangle(1000, 1500);
+
+    private FixtureGenerator() {
+    }
+
+    // Папка с готовыми файлами (-Dfixtures.dir=..., по умолчанию во временной папке)
+    public static File fixturesDir() {
+        File dir = new File(System.getProperty("fixtures.dir",
+                new File(System.getProperty("java.io.tmpdir"), "manga-cleaner-fixtures").getPath()));
+        dir.mkdirs();
+        return dir;
+    }
+
+    public static synchronized File pdf(Kind kind, int pages) throws IOException {
+        File file = new File(fixturesDir(), kind.name().toLowerCase() + "-" + pages + ".pdf");
+        if (!file.isFile()) {
+            File tmp = new File(file.getPath() + ".tmp");
+            if (kind == Kind.TEXT) {
+                writeTextPdf(tmp, pages);
+            } else {
+                writeMangaPdf(tmp, pages, kind == Kind.MANGA_WATERMARKED);
+            }
+            if (!tmp.renameTo(file)) throw new IOException("Cannot create " + file);
+        }
+        return file;
+    }
+
+    public static synchronized File epub(int chapters) throws IOException {
+        File file = new File(fixturesDir(), "book-" + chapters + ".epub");
+        if (!file.isFile()) {
+            File tmp = new File(file.getPath() + ".tmp");
+            writeEpub(tmp, chapters);
+            if (!tmp.renameTo(file)) throw new IOException("Cannot create " + file);
+        }
+        return file;
+    }
+
+    static void writeTextPdf(File out, int pages) throws IOException {
+        try (PDDocument doc = new PDDocument()) {
+            for (int i = 0; i < pages; i++) {
+                PDPage page = new PDPage(PDRectangle.A5);
+                doc.addPage(page);
+                try (PDPageContentStream cs = new PDPageContentStream(doc, page)) {
+                    boolean last = i == pages - 1;
+                    cs.beginText();
+                    cs.setFont(PDType1Font.TIMES_ROMAN, 10);
+                    cs.setLeading(12);
+                    cs.newLineAtOffset(36, 560);
+                    if (last) {
+                        cs.showText("Download more books at " + WATERMARK);
+                    } else {
+                        for (int line = 0; line < 40; line++) {
+                            cs.showText(LOREM.substring(0, 40 + (line * 7 + i) % 40));
+                            cs.newLine();
+                        }
+                    }
+                    cs.endText();
+
+                    if (!last && i % 2 == 0) {
+                        cs.beginText();
+                        cs.setFont(PDType1Font.HELVETICA, 8);
+                        cs.newLineAtOffset(36, 20);
+                        cs.showText(WATERMARK);
+                        cs.endText();
+                    }
+                }
+            }
+            doc.save(out);
+        }
+    }
+
+    static void writeMangaPdf(File out, int pages, boolean watermarked) throws IOException {
+        Random random = new Random(pages);
+        try (PDDocument doc = new PDDocument()) {
+            for (int i = 0; i < pages; i++) {
+                PDPage page = new PDPage(MANGA_PAGE);
+                doc.addPage(page);
+                PDImageXObject image = JPEGFactory.createFromImage(doc, drawPanel(random, i), 0.8f);
+                try (PDPageContentStream cs = new PDPageContentStream(doc, page)) {
+                    float x = (MANGA_PAGE.getWidth() - IMAGE_W) / 2;
+                    float y = (MANGA_PAGE.getHeight() - IMAGE_H) / 2;
+                    cs.drawImage(image, x, y, IMAGE_W, IMAGE_H);
+
+                    // Каждая пятая страница — с текстовым водяным знаком внизу
+                    if (watermarked && i % 5 == 2) {
+                        cs.beginText();
+                        cs.setFont(PDType1Font.HELVETICA, 9);
+                        cs.newLineAtOffset(40, 15);
+                        cs.showText(WATERMARK);
+                        cs.endText();
+                    }
+                }
+            }
+            doc.save(out);
+        }
+    }
+
+    static void writeEpub(File out, int chapters) throws IOException {
+        Book book = new Book();
+        book.getMetadata().addTitle("Benchmark book " + chapters);
+        Random random = new Random(chapters);
+
+        for (int i = 0; i < chapters; i++) {
+            StringBuilder html = new StringBuilder()
+                    .append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+                    .append("<html xmlns=\"http://www.w3.org/1999/xhtml\"><head><title>Chapter ").append(i + 1)
+                    .append("</title></head><body>\n<h1>Chapter ").append(i + 1).append("</h1>\n");
+            for (int p = 0; p < 60; p++) {
+                html.append("<p>").append(LOREM).append(LOREM).append("</p>\n");
+            }
+            // Водяной знак в каждой третьей главе, как в скачанных книгах
+            if (i % 3 == 0) html.append("<p class=\"footer\">").append(WATERMARK).append("</p>\n");
+            html.append("</body></html>\n");
+            book.addSection("Chapter " + (i + 1),
+                    new Resource(html.toString().getBytes(StandardCharsets.UTF_8), "chapter_" + i + ".xhtml"));
+
+            // Иллюстрации: их очистка не трогает, они копируются как есть
+            if (i % 4 == 0) {
+                ByteArrayOutputStream jpeg = new ByteArrayOutputStream();
+                ImageIO.write(drawPanel(random, i), "jpg", jpeg);
+                book.getResources().add(new Resource(jpeg.toByteArray(), "images/illustration_" + i + ".jpg"));
+            }
+        }
+
+        try (OutputStream os = new FileOutputStream(out)) {
+            new EpubWriter().write(book, os);
+        }
+    }
+
+    // Черно-белая "страница" с панелями и шумом, чтобы JPEG сжимался примерно как скан
+    private static BufferedImage drawPanel(Random random, int index) {
+        BufferedImage image = new BufferedImage(IMAGE_W, IMAGE_H, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(Color.WHITE);
+        g.fillRect(0, 0, IMAGE_W, IMAGE_H);
+        g.setColor(Color.BLACK);
+        for (int panel = 0; panel < 4; panel++) {
+            int px = 30 + (panel % 2) * 430;
+            int py = 30 + (panel / 2) * 650;
+            g.drawRect(px, py, 410, 620);
+            for (int k = 0; k < 25; k++) {
+                g.fillOval(px + random.nextInt(360), py + random.nextInt(570), 10 + random.nextInt(50), 10 + random.nextInt(50));
+            }
+        }
+        g.setFont(new Font(Font.SANS_SERIF, Font.BOLD, 28));
+        g.drawString("Page " + (index + 1), 60, IMAGE_H - 40);
+        g.dispose();
+        return image;
+    }
+
+    // Сгенерировать все стандартные наборы заранее: java -cp benchmarks.jar org.example.benchmarks.FixtureGenerator
+    public static void main(String[] args) throws IOException {
+        for (int pages : new int[]{10, 100, 500}) {
+            for (Kind kind : Kind.values()) {
+                System.out.println(pdf(kind, pages));
+            }
+        }
+        for (int chapters : new int[]{10, 100}) {
+            System.out.println(epub(chapters));
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package org.example.benchmarks;
+
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.example.CleanReport;
+import org.example.PdfWatermarkCleaner;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+// Очистка PDF от водяных знаков: документов в секунду по типу файла и числу страниц.
+// load — та же загрузка без очистки, чтобы отделить стоимость PDFBox-парсинга от нашей
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PdfCleanBenchmark {
+
+    @Param({"TEXT", "MANGA", "MANGA_WATERMARKED"})
+    public FixtureGenerator.Kind kind;
+
+    @Param({"10", "100", "500"})
+    public int pages;
+
+    private byte[] pdf;
+    private PdfWatermarkCleaner cleaner;
+
+    @Setup
+    public void setup() throws IOException {
+        pdf = Files.readAllBytes(FixtureGenerator.pdf(kind, pages).toPath());
+        cleaner = new PdfWatermarkCleaner();
+    }
+
+    @Benchmark
+    public int load() throws IOException {
+        try (PDDocument doc = PDDocument.load(pdf, null, null, null, MemoryUsageSetting.setupMainMemoryOnly())) {
+            return doc.getNumberOfPages();
+        }
+    }
+
+    @Benchmark
+    public CleanReport clean() throws IOException {
+        try (PDDocument doc = PDDocument.load(pdf, null, null, null, MemoryUsageSetting.setupMainMemoryOnly())) {
+            return cleaner.clean(doc);
+        }
+    }
+}
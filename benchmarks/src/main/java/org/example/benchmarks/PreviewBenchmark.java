@@ -0,0 +1,51 @@
+package org.example.benchmarks;
+
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.example.MangaResizer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+// Превью для диалога выбора режима. Документ открывается в каждом вызове:
+// иначе PDFBox отдает уже декодированную картинку из своего кеша и замер ничего не говорит
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class PreviewBenchmark {
+
+    @Param({"10", "100", "500"})
+    public int pages;
+
+    private byte[] pdf;
+    private MangaResizer resizer;
+
+    @Setup
+    public void setup() throws IOException {
+        pdf = Files.readAllBytes(FixtureGenerator.pdf(FixtureGenerator.Kind.MANGA, pages).toPath());
+        resizer = new MangaResizer();
+    }
+
+    @Benchmark
+    public BufferedImage getPreviewImage() throws IOException {
+        try (PDDocument doc = PDDocument.load(pdf, null, null, null, MemoryUsageSetting.setupMainMemoryOnly())) {
+            return resizer.getPreviewImage(doc);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package org.example.benchmarks;
+
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.example.CropMode;
+import org.example.MangaResizer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+// Ресайз манги (все страницы, кроме обложки) и он же вместе с полной записью результата
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResizeBenchmark {
+
+    @Param({"FIT_WIDTH", "CENTER_ONLY"})
+    public CropMode mode;
+
+    @Param({"10", "100", "500"})
+    public int pages;
+
+    private byte[] pdf;
+    private MangaResizer resizer;
+
+    @Setup
+    public void setup() throws IOException {
+        pdf = Files.readAllBytes(FixtureGenerator.pdf(FixtureGenerator.Kind.MANGA, pages).toPath());
+        resizer = new MangaResizer();
+    }
+
+    @Benchmark
+    public int applyResize() throws IOException {
+        try (PDDocument doc = PDDocument.load(pdf, null, null, null, MemoryUsageSetting.setupMainMemoryOnly())) {
+            resizer.applyResize(doc, mode);
+            return doc.getNumberOfPages();
+        }
+    }
+
+    @Benchmark
+    public int applyResizeAndSave() throws IOException {
+        try (PDDocument doc = PDDocument.load(pdf, null, null, null, MemoryUsageSetting.setupMainMemoryOnly())) {
+            resizer.applyResize(doc, mode);
+            doc.save(OutputStream.nullOutputStream());
+            return doc.getNumberOfPages();
+        }
+    }
+}
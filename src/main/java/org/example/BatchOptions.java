@@ -0,0 +1,168 @@
+package org.example;
+
+import java.io.File;
+import java.util.List;
+
+// Настройки пакетной обработки (сколько файлов обрабатываем одновременно и сколько памяти им можно занять)
+public class BatchOptions {
+
+    // Сколько памяти кучи разрешаем занять всем файлам в работе одновременно (доля от -Xmx)
+    private static final double HEAP_BUDGET_SHARE = 0.6;
+
+    // Ниже этой уверенности автовыбор режима ресайза спрашивает пользователя
+    static final double DEFAULT_AUTO_CROP_MIN_CONFIDENCE = 0.75;
+
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+    private long heapBudgetBytes = (long) (Runtime.getRuntime().maxMemory() * HEAP_BUDGET_SHARE);
+    private MemoryPolicy memoryPolicy = MemoryPolicy.AUTO;
+    private boolean incrementalSave = true;
+    private List<String> watermarkPatterns = WatermarkMatcher.DEFAULT.getPatterns();
+    private CropMode cropMode;
+    private boolean skipUnchanged = true;
+    private double autoCropMinConfidence = DEFAULT_AUTO_CROP_MIN_CONFIDENCE;
+    private DeviceProfile deviceProfile;
+    private int parallelAnalysisMinPages = 300;
+    private boolean rasterWatermarks = true;
+    private File junkIndexFile = JunkPageIndex.defaultFile();
+    private boolean junkIndexReadOnly;
+    private OutputFormat outputFormat = OutputFormat.PDF;
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) throw new IllegalArgumentException("parallelism must be >= 1: " + parallelism);
+        this.parallelism = parallelism;
+    }
+
+    public long getHeapBudgetBytes() {
+        return heapBudgetBytes;
+    }
+
+    public void setHeapBudgetBytes(long heapBudgetBytes) {
+        if (heapBudgetBytes < 1) throw new IllegalArgumentException("heap budget must be > 0: " + heapBudgetBytes);
+        this.heapBudgetBytes = heapBudgetBytes;
+    }
+
+    // AUTO — выбирать для каждого PDF по размеру файла и свободной куче
+    public MemoryPolicy getMemoryPolicy() {
+        return memoryPolicy;
+    }
+
+    public void setMemoryPolicy(MemoryPolicy memoryPolicy) {
+        if (memoryPolicy == null) throw new IllegalArgumentException("memory policy must not be null");
+        this.memoryPolicy = memoryPolicy;
+    }
+
+    // Для прогонов без ресайза: дописывать правки в конец исходного PDF вместо полной перезаписи
+    public boolean isIncrementalSave() {
+        return incrementalSave;
+    }
+
+    public void setIncrementalSave(boolean incrementalSave) {
+        this.incrementalSave = incrementalSave;
+    }
+
+    // Какие водяные знаки искать (сайты и варианты написания, регистр не важен)
+    public List<String> getWatermarkPatterns() {
+        return watermarkPatterns;
+    }
+
+    public void setWatermarkPatterns(List<String> watermarkPatterns) {
+        if (watermarkPatterns == null || watermarkPatterns.isEmpty()) {
+            throw new IllegalArgumentException("at least one watermark pattern is required");
+        }
+        // Пустой или не-ASCII образец — ошибка здесь, при разборе настроек, а не при создании BatchProcessor
+        WatermarkMatcher.of(watermarkPatterns);
+        this.watermarkPatterns = List.copyOf(watermarkPatterns);
+    }
+
+    // Заранее заданный режим ресайза на весь пакет; null — спросить у CropModeChooser по первому PDF,
+    // AUTO — выбирать для каждого тома отдельно
+    public CropMode getCropMode() {
+        return cropMode;
+    }
+
+    public void setCropMode(CropMode cropMode) {
+        this.cropMode = cropMode;
+    }
+
+    // Пропускать файлы, уже обработанные с теми же настройками (по журналу в папке результатов)
+    public boolean isSkipUnchanged() {
+        return skipUnchanged;
+    }
+
+    public void setSkipUnchanged(boolean skipUnchanged) {
+        this.skipUnchanged = skipUnchanged;
+    }
+
+    // Для AUTO: ниже этой уверенности спрашиваем CropModeChooser (а без него оставляем том без ресайза)
+    public double getAutoCropMinConfidence() {
+        return autoCropMinConfidence;
+    }
+
+    public void setAutoCropMinConfidence(double autoCropMinConfidence) {
+        if (autoCropMinConfidence < 0 || autoCropMinConfidence > 1) {
+            throw new IllegalArgumentException("confidence must be in [0, 1]: " + autoCropMinConfidence);
+        }
+        this.autoCropMinConfidence = autoCropMinConfidence;
+    }
+
+    // Под какую читалку уменьшать картинки; null — оставить картинки как в исходнике
+    public DeviceProfile getDeviceProfile() {
+        return deviceProfile;
+    }
+
+    public void setDeviceProfile(DeviceProfile deviceProfile) {
+        this.deviceProfile = deviceProfile;
+    }
+
+    // PDF от стольких страниц анализируется параллельно диапазонами страниц (один толстый том не тянет хвост пакета); 0 — никогда
+    public int getParallelAnalysisMinPages() {
+        return parallelAnalysisMinPages;
+    }
+
+    public void setParallelAnalysisMinPages(int parallelAnalysisMinPages) {
+        if (parallelAnalysisMinPages < 0) {
+            throw new IllegalArgumentException("page threshold must be >= 0: " + parallelAnalysisMinPages);
+        }
+        this.parallelAnalysisMinPages = parallelAnalysisMinPages;
+    }
+
+    // Искать водяной знак, впечатанный в картинки страниц (сканы без текстового слоя), и замазывать его
+    public boolean isRasterWatermarks() {
+        return rasterWatermarks;
+    }
+
+    public void setRasterWatermarks(boolean rasterWatermarks) {
+        this.rasterWatermarks = rasterWatermarks;
+    }
+
+    // Индекс известных мусорных страниц, общий для всех пакетов; null — не узнавать и не запоминать
+    public File getJunkIndexFile() {
+        return junkIndexFile;
+    }
+
+    public void setJunkIndexFile(File junkIndexFile) {
+        this.junkIndexFile = junkIndexFile;
+    }
+
+    // Только узнавать страницы из индекса, файл не перезаписывать (локальные воркеры делят один файл)
+    public boolean isJunkIndexReadOnly() {
+        return junkIndexReadOnly;
+    }
+
+    public void setJunkIndexReadOnly(boolean junkIndexReadOnly) {
+        this.junkIndexReadOnly = junkIndexReadOnly;
+    }
+
+    // Во что сохранять PDF (EPUB всегда остается EPUB)
+    public OutputFormat getOutputFormat() {
+        return outputFormat;
+    }
+
+    public void setOutputFormat(OutputFormat outputFormat) {
+        this.outputFormat = outputFormat;
+    }
+}
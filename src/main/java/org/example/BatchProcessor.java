@@ -0,0 +1,347 @@
+package org.example;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Параллельная пакетная обработка: несколько файлов одновременно, но в пределах бюджета памяти
+public class BatchProcessor {
+
+    // Как выбрать режим ресайза. Без AUTO вызывается один раз на весь пакет, по первому PDF (suggestion == null);
+    // в режиме AUTO — только для томов, где автовыбор не уверен (suggestion — его догадка). null — без ресайза
+    public interface CropModeChooser {
+        CropMode choose(File input, BufferedImage preview, int totalFiles, CropDecision suggestion) throws Exception;
+    }
+
+    // Уведомления о ходе работы (вызываются из рабочих потоков)
+    public interface Listener {
+        default void fileStarted(File input, int started, int total) {}
+
+        default void fileFinished(FileResult result, int finished, int total) {}
+    }
+
+    private static final long MB = 1024 * 1024;
+
+    // EPUB чистится потоково: в памяти одна запись архива за раз
+    private static final long EPUB_HEAP_ESTIMATE = 32 * MB;
+
+    private final EpubWatermarkCleaner epubCleaner;
+    private final MangaResizer mangaResizer = new MangaResizer();
+    private final PdfPipeline pdfPipeline;
+    // Индекс мусорных страниц на всю библиотеку (null — выключен); сохраняется в конце каждого пакета
+    private final JunkPageIndex junkIndex;
+
+    private final BatchOptions options;
+    private final CropModeChooser chooser;
+    private final String settingsKey;
+
+    // Режим ресайза, выбранный для текущего пакета (null — еще не выбран).
+    // Пишется под cropModeLock, читается без блокировки: уже выбранный режим не ждет чужих диалогов
+    private final Object cropModeLock = new Object();
+    private volatile CropMode batchMode;
+
+    // Диалоги по неуверенным томам AUTO — по одному за раз, отдельно от cropModeLock
+    private final Object dialogLock = new Object();
+
+    // Время этапов текущего пакета
+    private PipelineMetrics metrics = new PipelineMetrics();
+
+    public BatchProcessor(BatchOptions options, CropModeChooser chooser) {
+        this.options = options;
+        this.chooser = chooser;
+
+        // Набор водяных знаков компилируется один раз на весь пакет
+        WatermarkMatcher matcher = WatermarkMatcher.of(options.getWatermarkPatterns());
+        epubCleaner = new EpubWatermarkCleaner(matcher);
+        PdfWatermarkCleaner pdfCleaner = new PdfWatermarkCleaner(matcher);
+        junkIndex = (options.getJunkIndexFile() != null) ? JunkPageIndex.load(options.getJunkIndexFile()) : null;
+        pdfCleaner.setJunkIndex(junkIndex);
+        pdfPipeline = new PdfPipeline(pdfCleaner, mangaResizer);
+        pdfPipeline.setIncrementalSave(options.isIncrementalSave());
+        // Шаблоны надписи рисуются один раз на весь пакет
+        pdfPipeline.setRasterCleaner(options.isRasterWatermarks() ? new RasterWatermarkCleaner(mangaResizer) : null);
+        pdfPipeline.setCbzExporter(options.getOutputFormat() == OutputFormat.CBZ ? new CbzExporter(mangaResizer) : null);
+        settingsKey = ProcessingManifest.settingsKey(options.getWatermarkPatterns(), options.getDeviceProfile(),
+                options.isRasterWatermarks(), options.getAutoCropMinConfidence(), options.getJunkIndexFile());
+    }
+
+    public BatchResult process(List<File> inputs, File outputDir, Listener listener) throws InterruptedException {
+        long start = System.currentTimeMillis();
+        synchronized (cropModeLock) {
+            batchMode = options.getCropMode();
+        }
+        metrics = new PipelineMetrics();
+        pdfPipeline.setMetrics(metrics);
+
+        int total = inputs.size();
+        int parallelism = Math.min(options.getParallelism(), Math.max(1, total));
+        int budgetMb = (int) Math.max(1, options.getHeapBudgetBytes() / MB);
+        Semaphore memory = new Semaphore(budgetMb, true);
+        AtomicInteger started = new AtomicInteger();
+        AtomicInteger finished = new AtomicInteger();
+
+        // Журнал прошлых запусков: неизмененные тома не открываем вовсе
+        ProcessingManifest manifest = options.isSkipUnchanged() ? ProcessingManifest.load(outputDir) : null;
+
+        ExecutorService pool = daemonPool("batch-worker-", parallelism);
+
+        // Пережатие картинок: свой пул на все ядра, общий для всех файлов пакета
+        int cpus = Runtime.getRuntime().availableProcessors();
+        ExecutorService imagePool = null;
+        if (options.getDeviceProfile() != null) {
+            imagePool = daemonPool("image-worker-", cpus);
+            pdfPipeline.setRecompressor(new ImageRecompressor(options.getDeviceProfile(), imagePool, cpus));
+        } else {
+            pdfPipeline.setRecompressor(null);
+        }
+
+        // Анализ толстых томов по диапазонам страниц: тоже свой пул на все ядра
+        ExecutorService analysisPool = null;
+        if (options.getParallelAnalysisMinPages() > 0 && cpus > 1) {
+            analysisPool = daemonPool("analysis-worker-", cpus);
+        }
+        pdfPipeline.setParallelAnalysis(analysisPool, cpus, options.getParallelAnalysisMinPages());
+
+        List<Future<FileResult>> futures = new ArrayList<>();
+        try (RssSampler rss = new RssSampler()) {
+            for (File input : inputs) {
+                FileResult previous = (manifest != null) ? findProcessed(manifest, input, outputDir) : null;
+                if (previous != null) {
+                    listener.fileFinished(previous, finished.incrementAndGet(), total);
+                    futures.add(CompletableFuture.completedFuture(previous));
+                    continue;
+                }
+                futures.add(pool.submit(() -> {
+                    MemoryPolicy policy = choosePolicy(input, parallelism);
+                    // Файл, который сам по себе больше бюджета, идет в одиночку
+                    long needBytes = (policy != null) ? policy.estimateHeap(input.length()) : EPUB_HEAP_ESTIMATE;
+                    int needMb = (int) Math.min(budgetMb, needBytes / MB);
+                    memory.acquire(needMb);
+                    try {
+                        listener.fileStarted(input, started.incrementAndGet(), total);
+                        rss.begin(input);
+                        FileResult result = processFile(input, outputDir, policy, total, manifest);
+                        result.setPeakRssBytes(rss.end(input));
+                        listener.fileFinished(result, finished.incrementAndGet(), total);
+                        return result;
+                    } finally {
+                        memory.release(needMb);
+                    }
+                }));
+            }
+
+            List<FileResult> results = new ArrayList<>();
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    results.add(futures.get(i).get());
+                } catch (ExecutionException e) {
+                    // processFile сам ловит ошибки файла, сюда попадают только сбои слушателя
+                    FileResult failed = new FileResult(inputs.get(i), null);
+                    failed.setError(e.getCause());
+                    results.add(failed);
+                }
+            }
+            BatchResult batch = new BatchResult(results, System.currentTimeMillis() - start, rss.getOverallPeak(), metrics);
+            BatchReport.write(batch, outputDir);
+            saveJunkIndex();
+            return batch;
+        } finally {
+            pool.shutdownNow();
+            if (imagePool != null) imagePool.shutdownNow();
+            if (analysisPool != null) analysisPool.shutdownNow();
+        }
+    }
+
+    // Новые страницы и счетчики встреч; не сохранился — в следующем пакете просто узнается заново.
+    // Индекс только для чтения остается на диске как был: новое живет до конца процесса
+    private void saveJunkIndex() {
+        if (junkIndex == null || options.isJunkIndexReadOnly()) return;
+        try {
+            junkIndex.save();
+        } catch (IOException e) {
+            System.err.println("Не удалось сохранить индекс мусорных страниц: " + e.getMessage());
+        }
+    }
+
+    private static ExecutorService daemonPool(String namePrefix, int threads) {
+        AtomicInteger threadIds = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, namePrefix + threadIds.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    // Результат прошлого запуска, если вход, настройки и выход с тех пор не менялись; иначе null.
+    // Проверяется до старта рабочих потоков: если режим ресайза еще не выбран,
+    // берем режим, с которым серия обрабатывалась раньше, и не спрашиваем заново
+    private FileResult findProcessed(ProcessingManifest manifest, File input, File outputDir) {
+        File output = outputFile(input, outputDir);
+        String outputPath = output.getAbsolutePath();
+        ProcessingManifest.Record record;
+        CropMode mode = batchMode;
+        if (mode != null) {
+            record = manifest.findUnchanged(input, settingsKey, mode);
+        } else {
+            synchronized (cropModeLock) {
+                record = manifest.findUnchanged(input, settingsKey, batchMode);
+                if (record != null && record.output.equals(outputPath) && batchMode == null && record.cropMode != null) {
+                    batchMode = record.cropMode;
+                }
+            }
+        }
+        if (record == null || !record.output.equals(outputPath)) return null;
+
+        FileResult result = new FileResult(input, output);
+        result.setSkipped(true);
+        result.setCropMode(record.cropMode);
+        result.setBytesIn(record.inputSize);
+        result.setBytesOut(record.outputSize);
+        return result;
+    }
+
+    private FileResult processFile(File input, File outputDir, MemoryPolicy policy, int totalFiles,
+                                   ProcessingManifest manifest) {
+        long start = System.currentTimeMillis();
+        PipelineMetrics.FileEvent event = new PipelineMetrics.FileEvent();
+        event.begin();
+        // Создаем файл в ЦЕЛЕВОЙ папке (рядом с исходной папкой)
+        FileResult result = new FileResult(input, outputFile(input, outputDir));
+        File output = result.getOutput();
+
+        try {
+            String name = input.getName().toLowerCase();
+
+            if (name.endsWith(".pdf")) {
+                result.setMemoryPolicy(policy);
+                result.setReport(pdfPipeline.process(input, output, policy, doc -> {
+                    CropMode mode = resolveCropMode(input, doc, totalFiles, result);
+                    result.setCropMode(mode);
+                    return mode;
+                }));
+
+            } else if (name.endsWith(".epub")) {
+                try (PipelineMetrics.Span ignored = metrics.start(PipelineMetrics.Stage.EPUB_CLEAN)) {
+                    epubCleaner.clean(input, output);
+                }
+            }
+        } catch (Exception | OutOfMemoryError e) {
+            result.setError(e);
+        }
+        result.setMillis(System.currentTimeMillis() - start);
+        result.setBytesIn(input.length());
+        result.setBytesOut(result.isOk() ? output.length() : 0);
+
+        if (manifest != null && result.isOk()) {
+            try (PipelineMetrics.Span ignored = metrics.start(PipelineMetrics.Stage.MANIFEST)) {
+                // При автовыборе в журнал идет AUTO: повтор с AUTO не должен обрабатывать том заново
+                CropMode requested = (result.getCropDecision() != null) ? CropMode.AUTO : result.getCropMode();
+                manifest.put(input, output, settingsKey, requested);
+            } catch (IOException e) {
+                // Без записи в журнале файл просто обработается еще раз в следующий раз
+                System.err.println("Не удалось обновить журнал для " + input.getName() + ": " + e.getMessage());
+            }
+        }
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.file = input.getPath();
+            CleanReport report = result.getReport();
+            event.pages = (report != null) ? report.getTotalPages() : 0;
+            event.removedPages = (report != null) ? report.getRemovedPages() : 0;
+            event.bytesIn = result.getBytesIn();
+            event.bytesOut = result.getBytesOut();
+            event.failed = !result.isOk();
+            event.commit();
+        }
+        return result;
+    }
+
+    // Политика памяти для файла: заданная в настройках или автовыбор по размеру файла и доле кучи на один поток
+    private MemoryPolicy choosePolicy(File input, int parallelism) {
+        // null — не PDF (EPUB чистится потоково, по одной записи ZIP)
+        if (!input.getName().toLowerCase().endsWith(".pdf")) return null;
+
+        MemoryPolicy configured = options.getMemoryPolicy();
+        if (configured.getMode() != MemoryPolicy.Mode.AUTO) return configured;
+        long share = Math.min(options.getHeapBudgetBytes() / parallelism, MemoryPolicy.freeHeap());
+        return MemoryPolicy.choose(input.length(), share);
+    }
+
+    // Режим выбирается один раз на пакет: первый дошедший до ресайза поток спрашивает,
+    // остальные ждут ответа на этой же блокировке (очистка у них при этом уже идет параллельно).
+    // Когда режим выбран, блокировка больше не берется: AUTO решается по каждому тому отдельно,
+    // и уверенные тома не ждут, пока открыт диалог по неуверенному
+    private CropMode resolveCropMode(File input, PDDocument cleanedDoc, int totalFiles, FileResult result) throws Exception {
+        CropMode mode = batchMode;
+        if (mode == null) {
+            synchronized (cropModeLock) {
+                if (batchMode == null) {
+                    CropMode choice = null;
+                    try {
+                        BufferedImage preview = (chooser != null) ? mangaResizer.getPreviewImage(input, cleanedDoc) : null;
+                        if (preview != null) choice = chooser.choose(input, preview, totalFiles, null);
+                    } finally {
+                        // Если выбор сорвется (ошибка превью, закрытый диалог), остальные файлы просто чистим
+                        batchMode = (choice != null) ? choice : CropMode.SKIP;
+                    }
+                }
+                mode = batchMode;
+            }
+        }
+        if (mode != CropMode.AUTO) return mode;
+
+        CropDecision decision = mangaResizer.chooseMode(cleanedDoc);
+        result.setCropDecision(decision);
+        if (decision.getConfidence() >= options.getAutoCropMinConfidence()) return decision.getMode();
+        // Не уверены, а спросить некого — том только чистим
+        if (chooser == null) return CropMode.SKIP;
+
+        // Диалоги по неуверенным томам — по одному за раз
+        synchronized (dialogLock) {
+            BufferedImage preview = mangaResizer.getPreviewImage(input, cleanedDoc);
+            CropMode choice = (preview != null) ? chooser.choose(input, preview, totalFiles, decision) : null;
+            return (choice != null && choice != CropMode.AUTO) ? choice : CropMode.SKIP;
+        }
+    }
+
+    // Результат с учетом формата: "Том1.pdf" -> "Том1_clean.cbz" при выводе в CBZ.
+    // Журнал помнит путь результата, так что смена формата обрабатывает том заново
+    private File outputFile(File input, File outputDir) {
+        File output = createCleanFile(input, outputDir);
+        if (options.getOutputFormat() != OutputFormat.CBZ || !input.getName().toLowerCase().endsWith(".pdf")) return output;
+        String name = output.getName();
+        return new File(outputDir, name.substring(0, name.length() - ".pdf".length()) + ".cbz");
+    }
+
+    // Имя результата: "Том1.pdf" -> "Том1_clean.pdf" в папке назначения
+    public static File createCleanFile(File input, File targetDir) {
+        String originalName = input.getName();
+        String namePart;
+        String extPart;
+
+        int dotIndex = originalName.lastIndexOf('.');
+        if (dotIndex >= 0) {
+            namePart = originalName.substring(0, dotIndex);
+            extPart = originalName.substring(dotIndex);
+        } else {
+            namePart = originalName;
+            extPart = "";
+        }
+
+        // Чтобы избежать дублирования имени, если файл уже там есть, можно добавить счетчик,
+        // но пока просто _clean
+        return new File(targetDir, namePart + "_clean" + extPart);
+    }
+}
@@ -0,0 +1,95 @@
+package org.example;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.util.Arrays;
+
+// Машиночитаемый отчет о пакете (manga-cleaner-report.json рядом с результатами):
+// по каждому файлу — страницы, байты, удаленные страницы; по пакету — итоги и время по этапам.
+// Сравнивая отчеты разных версий на одном и том же корпусе, видно, какой этап стал медленнее.
+public final class BatchReport {
+
+    static final String FILE_NAME = "manga-cleaner-report.json";
+
+    private BatchReport() {
+    }
+
+    public static Json fileJson(FileResult r) {
+        CleanReport report = r.getReport();
+        return Json.object()
+                .put("file", r.getInput().getPath())
+                .put("output", r.getOutput() != null ? r.getOutput().getPath() : null)
+                .put("ok", r.isOk())
+                .put("skipped", r.isSkipped())
+                .put("millis", r.getMillis())
+                .put("pagesTotal", report != null ? report.getTotalPages() : null)
+                .put("pagesRemoved", report != null ? report.getRemovedPages() : null)
+                .put("pagesKnownJunk", report != null ? report.getKnownJunkPages() : null)
+                .put("pagesEdited", report != null ? report.getEditedPages() : null)
+                .put("pagesSkippedByPrefilter", report != null ? report.getPrefilterSkippedPages() : null)
+                .put("pagesRasterCovered", report != null ? report.getRasterCoveredPages() : null)
+                .put("bytesIn", r.getBytesIn())
+                .put("bytesOut", r.getBytesOut())
+                .put("cropMode", r.getCropMode())
+                .put("cropConfidence", r.getCropDecision() != null ? r.getCropDecision().getConfidence() : null)
+                .put("memoryPolicy", r.getMemoryPolicy())
+                .put("peakRssBytes", r.getPeakRssBytes())
+                .put("error", r.isOk() ? null : String.valueOf(r.getError()));
+    }
+
+    public static Json toJson(BatchResult batch) {
+        long pages = 0;
+        long removed = 0;
+        long knownJunk = 0;
+        long edited = 0;
+        long rasterCovered = 0;
+        long bytesIn = 0;
+        long bytesOut = 0;
+        Json[] files = new Json[batch.getResults().size()];
+        for (int i = 0; i < files.length; i++) {
+            FileResult r = batch.getResults().get(i);
+            files[i] = fileJson(r);
+            bytesIn += r.getBytesIn();
+            bytesOut += r.getBytesOut();
+            if (r.getReport() != null) {
+                pages += r.getReport().getTotalPages();
+                removed += r.getReport().getRemovedPages();
+                knownJunk += r.getReport().getKnownJunkPages();
+                edited += r.getReport().getEditedPages();
+                rasterCovered += r.getReport().getRasterCoveredPages();
+            }
+        }
+
+        return Json.object()
+                .put("finishedAt", Instant.now().toString())
+                .put("toolVersion", ProcessingManifest.TOOL_VERSION)
+                .put("millis", batch.getMillis())
+                .put("peakRssBytes", batch.getPeakRssBytes())
+                .put("totals", Json.object()
+                        .put("files", files.length)
+                        .put("skipped", batch.getSkippedCount())
+                        .put("failed", batch.getFailed().size())
+                        .put("pages", pages)
+                        .put("pagesRemoved", removed)
+                        .put("pagesKnownJunk", knownJunk)
+                        .put("pagesEdited", edited)
+                        .put("pagesRasterCovered", rasterCovered)
+                        .put("bytesIn", bytesIn)
+                        .put("bytesOut", bytesOut))
+                .put("stages", batch.getMetrics().toJson())
+                .put("files", Arrays.asList(files));
+    }
+
+    // Ошибка записи отчета не должна ронять пакет — результаты уже на диске
+    static void write(BatchResult batch, File outputDir) {
+        File file = new File(outputDir, FILE_NAME);
+        try {
+            Files.write(file.toPath(), (toJson(batch) + "\n").getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            System.err.println("Не удалось записать отчет " + file + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package org.example;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Итог всего пакета: результаты по каждому файлу в порядке входного списка
+public class BatchResult {
+
+    private final List<FileResult> results;
+    private final long millis;
+    private final long peakRssBytes;
+    private final PipelineMetrics metrics;
+
+    public BatchResult(List<FileResult> results, long millis, long peakRssBytes, PipelineMetrics metrics) {
+        this.results = Collections.unmodifiableList(new ArrayList<>(results));
+        this.millis = millis;
+        this.peakRssBytes = peakRssBytes;
+        this.metrics = metrics;
+    }
+
+    public List<FileResult> getResults() {
+        return results;
+    }
+
+    public List<FileResult> getFailed() {
+        List<FileResult> failed = new ArrayList<>();
+        for (FileResult r : results) {
+            if (!r.isOk()) failed.add(r);
+        }
+        return failed;
+    }
+
+    // Сколько файлов пропущено как уже обработанные
+    public int getSkippedCount() {
+        int skipped = 0;
+        for (FileResult r : results) {
+            if (r.isSkipped()) skipped++;
+        }
+        return skipped;
+    }
+
+    // Сколько страниц за весь пакет префильтр пропустил без полной экстракции текста
+    public int getPrefilterSkippedPages() {
+        int pages = 0;
+        for (FileResult r : results) {
+            if (r.getReport() != null) pages += r.getReport().getPrefilterSkippedPages();
+        }
+        return pages;
+    }
+
+    public long getMillis() {
+        return millis;
+    }
+
+    // Пик памяти процесса за весь пакет
+    public long getPeakRssBytes() {
+        return peakRssBytes;
+    }
+
+    // Время по этапам конвейера за весь пакет
+    public PipelineMetrics getMetrics() {
+        return metrics;
+    }
+
+    // Самый большой входной файл (по нему обычно и упираемся в память); null для пустого пакета
+    public FileResult getLargest() {
+        FileResult largest = null;
+        for (FileResult r : results) {
+            if (largest == null || r.getInput().length() > largest.getInput().length()) largest = r;
+        }
+        return largest;
+    }
+}
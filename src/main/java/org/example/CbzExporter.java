@@ -0,0 +1,261 @@
+package org.example;
+
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDStream;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.apache.pdfbox.rendering.PDFRenderer;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+// Очищенный том -> CBZ (ZIP без сжатия, страницы 001.jpg, 002.jpg ...).
+// Главная картинка страницы копируется из PDF как есть: DCT -> .jpg, JPX -> .jp2, без декодирования и пережатия,
+// так что работа упирается в диск. Перекодируются только картинки, которые так не скопировать (Flate-пиксели,
+// CMYK, маски), и картинки с замазанным водяным знаком: замазка в PDF — отдельный прямоугольник поверх, в архиве
+// ее надо впечатать в пиксели. Страницы без главной картинки (и все страницы не-картиночного тома) рендерятся.
+// Как и в анализе картинок: потоки PDF читаются по очереди, CRC и кодирование — параллельно, запись — по порядку
+public class CbzExporter {
+
+    // Страниц за раз (в памяти — их байты или декодированные пиксели)
+    private static final int CHUNK = 16;
+
+    // Том, где главная картинка есть меньше чем на такой доле страниц, — книга, а не манга: рендерим все страницы
+    private static final double MIN_IMAGE_PAGES = 0.9;
+
+    // Разрешение рендера страниц без картинки
+    private static final float RENDER_DPI = 150;
+
+    // Качество JPEG для перекодированных картинок (с впечатанной замазкой)
+    private static final float JPEG_QUALITY = 0.9f;
+
+    private static final int WRITE_BUFFER = 1 << 20;
+
+    private final MangaResizer resizer;
+
+    // resizer — тот же, что искал водяной знак в картинках: от него берутся найденные прямоугольники
+    public CbzExporter(MangaResizer resizer) {
+        this.resizer = resizer;
+    }
+
+    // Пишет страницы документа в output; возвращает, сколько картинок скопировано без перекодирования
+    public int export(PDDocument doc, File output) throws IOException {
+        int total = doc.getNumberOfPages();
+        int withImage = 0;
+        for (PDPage page : doc.getPages()) {
+            if (resizer.mainImage(doc, page) != null) withImage++;
+        }
+        boolean imageOnly = withImage >= total * MIN_IMAGE_PAGES;
+
+        PDFRenderer renderer = new PDFRenderer(doc);
+        String format = "%0" + Math.max(3, Integer.toString(total).length()) + "d";
+        int copied = 0;
+        try (ZipOutputStream zip = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(output), WRITE_BUFFER))) {
+            zip.setMethod(ZipOutputStream.STORED);
+            for (int from = 0; from < total; from += CHUNK) {
+                int to = Math.min(total, from + CHUNK);
+                List<Callable<Entry>> sources = new ArrayList<>(to - from);
+                for (int i = from; i < to; i++) sources.add(prepare(doc, renderer, i, imageOnly));
+
+                List<Entry> entries = new ArrayList<>(Collections.nCopies(sources.size(), null));
+                try {
+                    IntStream.range(0, sources.size()).parallel().forEach(k -> {
+                        try {
+                            entries.set(k, sources.get(k).call());
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        } catch (Exception e) {
+                            throw new UncheckedIOException(new IOException(e));
+                        }
+                    });
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                }
+
+                for (int k = 0; k < entries.size(); k++) {
+                    Entry entry = entries.get(k);
+                    ZipEntry ze = new ZipEntry(String.format(format, from + k + 1) + entry.extension);
+                    ze.setSize(entry.data.length);
+                    ze.setCompressedSize(entry.data.length);
+                    ze.setCrc(entry.crc);
+                    zip.putNextEntry(ze);
+                    zip.write(entry.data);
+                    zip.closeEntry();
+                    if (entry.copied) copied++;
+                }
+            }
+        }
+        return copied;
+    }
+
+    // Чтение страницы в потоке документа; возвращает то, что можно доделать параллельно
+    private Callable<Entry> prepare(PDDocument doc, PDFRenderer renderer, int index, boolean imageOnly) throws IOException {
+        PDPage page = doc.getPage(index);
+        // Повернутый лист — картинка в архиве легла бы боком
+        MangaResizer.MainImage img = (imageOnly && page.getRotation() % 360 == 0) ? resizer.mainImage(doc, page) : null;
+        if (img != null) {
+            float[][] covers = resizer.rasterCovers(doc, img.stream);
+            String extension = copyExtension(img.stream);
+            if (extension != null && covers == null) {
+                byte[] raw = readRaw(img.stream);
+                String ext = extension.equals(".jp2") ? jpxExtension(raw) : extension;
+                return () -> new Entry(ext, raw, true);
+            }
+            if (MangaResizer.isPlainJpeg(img.stream)) {
+                byte[] raw = readRaw(img.stream);
+                return () -> new Entry(".jpg", encodeJpeg(paintCovers(MangaResizer.decodeJpeg(raw, 1), covers)), false);
+            }
+            try {
+                // Остальное декодирует PDFBox с учетом цветового пространства, масок и /Decode
+                BufferedImage decoded = new PDImageXObject(new PDStream(img.stream), null).getImage();
+                boolean lossy = isLossy(img.stream);
+                return () -> {
+                    BufferedImage painted = paintCovers(decoded, covers);
+                    return lossy ? new Entry(".jpg", encodeJpeg(painted), false) : new Entry(".png", encodePng(painted), false);
+                };
+            } catch (IOException | RuntimeException e) {
+                // Не декодируется (JPX без декодера и т.п.) — страница рендерится целиком
+            }
+        }
+        BufferedImage rendered = renderer.renderImage(index, RENDER_DPI / 72f);
+        return () -> new Entry(".png", encodePng(rendered), false);
+    }
+
+    // Расширение, если картинку можно положить в архив байт-в-байт; null — нельзя.
+    // Маски, /Decode и CMYK без перекодирования отобразились бы не так, как в PDF
+    private static String copyExtension(COSStream stream) {
+        if (MangaResizer.isPlainJpeg(stream)) return ".jpg";
+        if (!COSName.JPX_DECODE.equals(singleFilter(stream))) return null;
+        if (stream.containsKey(COSName.DECODE) || stream.containsKey(COSName.SMASK) || stream.containsKey(COSName.MASK)
+                || stream.containsKey(COSName.SMASK_IN_DATA)) {
+            return null;
+        }
+        return ".jp2";
+    }
+
+    // JPX в PDF — либо контейнер JP2, либо голый кодовый поток J2K (читалки различают по расширению)
+    private static String jpxExtension(byte[] raw) {
+        boolean jp2 = raw.length >= 8 && raw[4] == 'j' && raw[5] == 'P' && raw[6] == ' ' && raw[7] == ' ';
+        return jp2 ? ".jp2" : ".j2k";
+    }
+
+    private static boolean isLossy(COSStream stream) {
+        COSBase filter = stream.getDictionaryObject(COSName.FILTER);
+        if (filter instanceof COSArray) {
+            for (COSBase f : (COSArray) filter) {
+                if (COSName.DCT_DECODE.equals(f) || COSName.JPX_DECODE.equals(f)) return true;
+            }
+            return false;
+        }
+        return COSName.DCT_DECODE.equals(filter) || COSName.JPX_DECODE.equals(filter);
+    }
+
+    private static COSBase singleFilter(COSStream stream) {
+        COSBase filter = stream.getDictionaryObject(COSName.FILTER);
+        if (filter instanceof COSArray) {
+            COSArray filters = (COSArray) filter;
+            filter = (filters.size() == 1) ? filters.getObject(0) : null;
+        }
+        return filter;
+    }
+
+    private static byte[] readRaw(COSStream stream) throws IOException {
+        try (InputStream in = stream.createRawInputStream()) {
+            return in.readAllBytes();
+        }
+    }
+
+    // Прямоугольники {слева, сверху, справа, снизу} в долях картинки — белым прямо в пиксели
+    private static BufferedImage paintCovers(BufferedImage image, float[][] covers) {
+        if (covers == null) return image;
+        int w = image.getWidth();
+        int h = image.getHeight();
+        Graphics2D g = image.createGraphics();
+        try {
+            g.setColor(Color.WHITE);
+            for (float[] r : covers) {
+                int x0 = (int) Math.floor(r[0] * w);
+                int y0 = (int) Math.floor(r[1] * h);
+                g.fillRect(x0, y0, (int) Math.ceil(r[2] * w) - x0, (int) Math.ceil(r[3] * h) - y0);
+            }
+        } finally {
+            g.dispose();
+        }
+        return image;
+    }
+
+    private static byte[] encodeJpeg(BufferedImage image) throws IOException {
+        // JPEG-кодировщик ImageIO не пишет альфу и палитру
+        if (image.getColorModel().hasAlpha() || image.getType() == BufferedImage.TYPE_BYTE_INDEXED
+                || image.getType() == BufferedImage.TYPE_BYTE_BINARY) {
+            BufferedImage rgb = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+            Graphics2D g = rgb.createGraphics();
+            g.drawImage(image, 0, 0, Color.WHITE, null);
+            g.dispose();
+            image = rgb;
+        }
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("jpeg");
+        if (!writers.hasNext()) throw new IOException("no JPEG writer");
+        ImageWriter writer = writers.next();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ImageOutputStream ios = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(ios);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(JPEG_QUALITY);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] encodePng(BufferedImage image) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if (!ImageIO.write(image, "png", out)) throw new IOException("no PNG writer");
+        return out.toByteArray();
+    }
+
+    // Готовая запись архива: CRC считается тут же, в параллельной части
+    private static final class Entry {
+        final String extension;
+        final byte[] data;
+        final long crc;
+        final boolean copied;
+
+        Entry(String extension, byte[] data, boolean copied) {
+            this.extension = extension;
+            this.data = data;
+            this.copied = copied;
+            CRC32 crc32 = new CRC32();
+            crc32.update(data);
+            this.crc = crc32.getValue();
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package org.example;
+
+// Статистика очистки одного PDF
+public class CleanReport {
+
+    private final int totalPages;
+    private final int removedPages;
+    private final int editedPages;
+    private final int prefilterSkippedPages;
+    private final int rasterCoveredPages;
+    private final int knownJunkPages;
+
+    public CleanReport(int totalPages, int removedPages, int editedPages, int prefilterSkippedPages) {
+        this(totalPages, removedPages, editedPages, prefilterSkippedPages, 0, 0);
+    }
+
+    public CleanReport(int totalPages, int removedPages, int editedPages, int prefilterSkippedPages,
+                       int rasterCoveredPages) {
+        this(totalPages, removedPages, editedPages, prefilterSkippedPages, rasterCoveredPages, 0);
+    }
+
+    public CleanReport(int totalPages, int removedPages, int editedPages, int prefilterSkippedPages,
+                       int rasterCoveredPages, int knownJunkPages) {
+        this.totalPages = totalPages;
+        this.removedPages = removedPages;
+        this.editedPages = editedPages;
+        this.prefilterSkippedPages = prefilterSkippedPages;
+        this.rasterCoveredPages = rasterCoveredPages;
+        this.knownJunkPages = knownJunkPages;
+    }
+
+    // Тот же отчет плюс страницы, где замазан водяной знак в картинке
+    CleanReport withRasterCoveredPages(int pages) {
+        return new CleanReport(totalPages, removedPages, editedPages, prefilterSkippedPages, pages, knownJunkPages);
+    }
+
+    // Тот же отчет плюс удаленные страницы, узнанные в индексе по картинке
+    CleanReport withKnownImagePagesRemoved(int pages) {
+        return new CleanReport(totalPages, removedPages + pages, editedPages, prefilterSkippedPages,
+                rasterCoveredPages, knownJunkPages + pages);
+    }
+
+    // Страниц во входном файле
+    public int getTotalPages() {
+        return totalPages;
+    }
+
+    // Удалено мусорных страниц
+    public int getRemovedPages() {
+        return removedPages;
+    }
+
+    // Из них узнано по индексу известных мусорных страниц (без анализа текста)
+    public int getKnownJunkPages() {
+        return knownJunkPages;
+    }
+
+    // Оставленных страниц, на которых что-то замазали или убрали ссылку
+    public int getEditedPages() {
+        return editedPages;
+    }
+
+    // Были ли вообще правки в документе
+    public boolean hasChanges() {
+        return removedPages > 0 || editedPages > 0 || rasterCoveredPages > 0;
+    }
+
+    // Страниц, на которых префильтр исключил водяной знак и полная экстракция текста не запускалась
+    public int getPrefilterSkippedPages() {
+        return prefilterSkippedPages;
+    }
+
+    // Страниц, на которых водяной знак нашелся в пикселях картинки и замазан
+    public int getRasterCoveredPages() {
+        return rasterCoveredPages;
+    }
+
+    @Override
+    public String toString() {
+        return "страниц: " + totalPages + ", удалено: " + removedPages + " (из них по индексу: " + knownJunkPages
+                + "), почищено: " + editedPages + ", пропущено префильтром: " + prefilterSkippedPages
+                + ", замазано в картинках: " + rasterCoveredPages;
+    }
+}
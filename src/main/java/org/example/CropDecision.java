@@ -0,0 +1,34 @@
+package org.example;
+
+// Автоматически выбранный режим ресайза для одного тома и насколько выбор надежен
+public class CropDecision {
+
+    private final CropMode mode;
+    private final double confidence;
+    private final int sampledPages;
+
+    public CropDecision(CropMode mode, double confidence, int sampledPages) {
+        this.mode = mode;
+        this.confidence = confidence;
+        this.sampledPages = sampledPages;
+    }
+
+    // Никогда не AUTO
+    public CropMode getMode() {
+        return mode;
+    }
+
+    // 0..1: доля просмотренных страниц, согласных с выбором
+    public double getConfidence() {
+        return confidence;
+    }
+
+    public int getSampledPages() {
+        return sampledPages;
+    }
+
+    @Override
+    public String toString() {
+        return mode + " (" + Math.round(confidence * 100) + "%, страниц: " + sampledPages + ")";
+    }
+}
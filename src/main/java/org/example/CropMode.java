@@ -5,5 +5,7 @@ public enum CropMode {
     FIT_WIDTH,      // Растянуть по ширине (стандарт для манги)
     FIT_HEIGHT,     // Растянуть по высоте
     STRETCH,        // Растянуть на весь экран (искажение)
-    CENTER_ONLY     // Не менять масштаб, просто центрировать
+    CENTER_ONLY,    // Не менять масштаб, просто центрировать
+    AUTO_TRIM,      // Найти поля скана (белые/черные полосы в самой картинке), отрезать и вписать остальное в лист
+    AUTO            // Выбрать для каждого тома по размерам страниц и картинок (MangaResizer.chooseMode)
 }
\ No newline at end of file
@@ -0,0 +1,86 @@
+package org.example;
+
+import java.util.List;
+import java.util.Locale;
+
+// Под какую читалку готовим тома: размер экрана в пикселях, ч/б или цвет, качество JPEG.
+// Картинки крупнее экрана уменьшаются и пережимаются (см. ImageRecompressor), остальные не трогаются
+public final class DeviceProfile {
+
+    public static final DeviceProfile KINDLE_PAPERWHITE = new DeviceProfile("kindle-paperwhite", 1236, 1648, true, 0.80f);
+    public static final DeviceProfile KINDLE_SCRIBE = new DeviceProfile("kindle-scribe", 1860, 2480, true, 0.80f);
+    public static final DeviceProfile KOBO_CLARA = new DeviceProfile("kobo-clara", 1072, 1448, true, 0.80f);
+    public static final DeviceProfile KOBO_LIBRA_COLOUR = new DeviceProfile("kobo-libra-colour", 1264, 1680, false, 0.85f);
+    public static final DeviceProfile TABLET = new DeviceProfile("tablet", 1600, 2560, false, 0.85f);
+
+    public static final List<DeviceProfile> PRESETS =
+            List.of(KINDLE_PAPERWHITE, KINDLE_SCRIBE, KOBO_CLARA, KOBO_LIBRA_COLOUR, TABLET);
+
+    private final String name;
+    private final int width;
+    private final int height;
+    private final boolean grayscale;
+    private final float jpegQuality;
+
+    public DeviceProfile(String name, int width, int height, boolean grayscale, float jpegQuality) {
+        if (width < 1 || height < 1) throw new IllegalArgumentException("screen size must be positive: " + width + "x" + height);
+        if (jpegQuality <= 0 || jpegQuality > 1) throw new IllegalArgumentException("JPEG quality must be in (0, 1]: " + jpegQuality);
+        this.name = name;
+        this.width = width;
+        this.height = height;
+        this.grayscale = grayscale;
+        this.jpegQuality = jpegQuality;
+    }
+
+    // Имя готового профиля ("kobo-clara") или размер экрана "1072x1448" (ч/б, качество 0.8)
+    public static DeviceProfile parse(String value) {
+        String v = value.trim().toLowerCase(Locale.ROOT);
+        for (DeviceProfile p : PRESETS) {
+            if (p.name.equals(v)) return p;
+        }
+        int x = v.indexOf('x');
+        if (x > 0) {
+            try {
+                int w = Integer.parseInt(v.substring(0, x));
+                int h = Integer.parseInt(v.substring(x + 1));
+                return new DeviceProfile(w + "x" + h, w, h, true, 0.80f);
+            } catch (NumberFormatException ignored) {
+                // ниже общая ошибка
+            }
+        }
+        throw new IllegalArgumentException("unknown device: " + value);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    // Экран в портретной ориентации, в пикселях
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    // Переводить картинки в оттенки серого (e-ink без цвета)
+    public boolean isGrayscale() {
+        return grayscale;
+    }
+
+    // 0..1, как в ImageWriteParam
+    public float getJpegQuality() {
+        return jpegQuality;
+    }
+
+    // Для ключа настроек в журнале обработанных файлов: смена профиля = другой результат
+    String settingsKey() {
+        return width + "x" + height + (grayscale ? "g" : "c") + Math.round(jpegQuality * 100);
+    }
+
+    @Override
+    public String toString() {
+        return name + " (" + width + "x" + height + (grayscale ? ", ч/б" : ", цвет") + ")";
+    }
+}
@@ -4,16 +4,67 @@ import nl.siegmann.epublib.domain.Book;
 import nl.siegmann.epublib.domain.Resource;
 import nl.siegmann.epublib.epub.EpubReader;
 import nl.siegmann.epublib.epub.EpubWriter;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipFile;
 
 import java.io.*;
 import java.nio.charset.StandardCharsets;
 import java.util.Collection;
+import java.util.Enumeration;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
 
 public class EpubWatermarkCleaner {
 
-    private static final String WATERMARK = "oceanofpdf.com";
+    private static final String MIMETYPE = "mimetype";
+    private static final byte[] EPUB_MIMETYPE = "application/epub+zip".getBytes(StandardCharsets.US_ASCII);
 
+    private final WatermarkMatcher matcher;
+
+    public EpubWatermarkCleaner() {
+        this(WatermarkMatcher.DEFAULT);
+    }
+
+    public EpubWatermarkCleaner(WatermarkMatcher matcher) {
+        this.matcher = matcher;
+    }
+
+    // Потоковая очистка на уровне ZIP: по одной записи за раз, нетронутые записи копируются сжатыми как есть
     public void clean(File input, File output) throws IOException {
+        try (ZipFile zip = ZipFile.builder().setFile(input).get();
+             ZipArchiveOutputStream out = new ZipArchiveOutputStream(output)) {
+
+            // mimetype по стандарту EPUB — первой записью и без сжатия
+            writeMimetype(zip, out);
+
+            Enumeration<ZipArchiveEntry> entries = zip.getEntriesInPhysicalOrder();
+            while (entries.hasMoreElements()) {
+                ZipArchiveEntry entry = entries.nextElement();
+                if (MIMETYPE.equals(entry.getName())) continue;
+
+                if (!entry.isDirectory() && isHtml(entry.getName())) {
+                    byte[] data;
+                    try (InputStream in = zip.getInputStream(entry)) {
+                        data = in.readAllBytes();
+                    }
+                    // Быстрая проверка по байтам, чтобы не декодировать и не пережимать HTML зря
+                    if (matcher.containsIn(data)) {
+                        writeDeflated(out, entry, cleanHtml(data));
+                        continue;
+                    }
+                }
+
+                // Картинки, шрифты, CSS и HTML без водяного знака — сырыми сжатыми байтами, без распаковки
+                try (InputStream raw = zip.getRawInputStream(entry)) {
+                    out.addRawArchiveEntry(entry, raw);
+                }
+            }
+        }
+    }
+
+    // Старый путь через epublib: вся книга в памяти, все ресурсы пережимаются заново
+    public void cleanInMemory(File input, File output) throws IOException {
         Book book;
         // Читаем исходный EPUB
         try (InputStream in = new FileInputStream(input)) {
@@ -24,19 +75,14 @@ public class EpubWatermarkCleaner {
 
         for (Resource res : resources) {
             // Обрабатываем только HTML файлы
-            if (!isHtml(res)) continue;
-
-            // Получаем текст ресурса
-            String originalHtml = new String(res.getData(), StandardCharsets.UTF_8);
+            if (!isHtml(res.getHref())) continue;
 
             // Быстрая проверка, чтобы не использовать регулярки зря
-            if (!originalHtml.toLowerCase().contains(WATERMARK)) continue;
-
-            // Удаляем watermark (нечувствительно к регистру)
-            String cleanedHtml = originalHtml.replaceAll("(?i)\\s*oceanofpdf\\.com\\s*", "");
+            byte[] data = res.getData();
+            if (!matcher.containsIn(data)) continue;
 
             // Сохраняем обратно в ресурс
-            res.setData(cleanedHtml.getBytes(StandardCharsets.UTF_8));
+            res.setData(cleanHtml(data));
         }
 
         // --- ФИКС БАГА С ОБЛОЖКОЙ ---
@@ -53,10 +99,74 @@ public class EpubWatermarkCleaner {
         }
     }
 
-    private boolean isHtml(Resource res) {
-        String href = res.getHref();
+    private byte[] cleanHtml(byte[] data) {
+        // Получаем текст ресурса
+        String originalHtml = new String(data, StandardCharsets.UTF_8);
+
+        // Удаляем watermark вместе с пробелами вокруг (нечувствительно к регистру)
+        String cleanedHtml = removeFromText(originalHtml);
+
+        return cleanedHtml.getBytes(StandardCharsets.UTF_8);
+    }
+
+    // Только в тексте между тегами: разметку не трогаем, иначе короткий образец ("oceanofpdf")
+    // вырезался бы из имен файлов и атрибутов (src="img/oceanofpdf_logo.png" -> "img/_logo.png")
+    private String removeFromText(String html) {
+        if (!matcher.containsIn(html)) return html;
+        StringBuilder out = new StringBuilder(html.length());
+        int pos = 0;
+        while (pos < html.length()) {
+            int tag = html.indexOf('<', pos);
+            int textEnd = (tag < 0) ? html.length() : tag;
+            String text = html.substring(pos, textEnd);
+            out.append(matcher.containsIn(text) ? matcher.removeAll(text) : text);
+            if (tag < 0) break;
+            int close = html.indexOf('>', tag);
+            pos = (close < 0) ? html.length() : close + 1;
+            out.append(html, tag, pos);
+        }
+        return out.toString();
+    }
+
+    private void writeMimetype(ZipFile zip, ZipArchiveOutputStream out) throws IOException {
+        ZipArchiveEntry original = zip.getEntry(MIMETYPE);
+        if (original != null && original.getMethod() == ZipEntry.STORED) {
+            try (InputStream raw = zip.getRawInputStream(original)) {
+                out.addRawArchiveEntry(original, raw);
+            }
+            return;
+        }
+
+        // Нет записи или она сжата — пишем правильную сами
+        byte[] data = EPUB_MIMETYPE;
+        if (original != null) {
+            try (InputStream in = zip.getInputStream(original)) {
+                data = in.readAllBytes();
+            }
+        }
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        ZipArchiveEntry entry = new ZipArchiveEntry(MIMETYPE);
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(data.length);
+        entry.setCrc(crc.getValue());
+        out.putArchiveEntry(entry);
+        out.write(data);
+        out.closeArchiveEntry();
+    }
+
+    private void writeDeflated(ZipArchiveOutputStream out, ZipArchiveEntry original, byte[] data) throws IOException {
+        ZipArchiveEntry entry = new ZipArchiveEntry(original.getName());
+        entry.setMethod(ZipEntry.DEFLATED);
+        entry.setTime(original.getTime());
+        out.putArchiveEntry(entry);
+        out.write(data);
+        out.closeArchiveEntry();
+    }
+
+    private boolean isHtml(String href) {
         if (href == null) return false;
         String lower = href.toLowerCase();
         return lower.endsWith(".html") || lower.endsWith(".xhtml") || lower.endsWith(".htm");
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,125 @@
+package org.example;
+
+import java.io.File;
+
+// Итог обработки одного файла из пакета (заполняется BatchProcessor по ходу работы)
+public class FileResult {
+
+    private final File input;
+    private final File output;
+    private Throwable error;
+    private long millis;
+    private CleanReport report;
+    private MemoryPolicy memoryPolicy;
+    private long peakRssBytes;
+    private long bytesIn;
+    private long bytesOut;
+    private boolean skipped;
+    private CropMode cropMode;
+    private CropDecision cropDecision;
+
+    public FileResult(File input, File output) {
+        this.input = input;
+        this.output = output;
+    }
+
+    public File getInput() {
+        return input;
+    }
+
+    public File getOutput() {
+        return output;
+    }
+
+    // null, если файл обработан без ошибок
+    public Throwable getError() {
+        return error;
+    }
+
+    void setError(Throwable error) {
+        this.error = error;
+    }
+
+    public boolean isOk() {
+        return error == null;
+    }
+
+    public long getMillis() {
+        return millis;
+    }
+
+    void setMillis(long millis) {
+        this.millis = millis;
+    }
+
+    // Статистика очистки PDF (null для EPUB и при ошибке)
+    public CleanReport getReport() {
+        return report;
+    }
+
+    void setReport(CleanReport report) {
+        this.report = report;
+    }
+
+    // С какой политикой памяти открывался PDF (null для EPUB)
+    public MemoryPolicy getMemoryPolicy() {
+        return memoryPolicy;
+    }
+
+    void setMemoryPolicy(MemoryPolicy memoryPolicy) {
+        this.memoryPolicy = memoryPolicy;
+    }
+
+    // Пик памяти процесса, пока файл был в работе (при параллельной обработке включает соседние файлы)
+    public long getPeakRssBytes() {
+        return peakRssBytes;
+    }
+
+    void setPeakRssBytes(long peakRssBytes) {
+        this.peakRssBytes = peakRssBytes;
+    }
+
+    public long getBytesIn() {
+        return bytesIn;
+    }
+
+    void setBytesIn(long bytesIn) {
+        this.bytesIn = bytesIn;
+    }
+
+    // Размер результата (0 при ошибке)
+    public long getBytesOut() {
+        return bytesOut;
+    }
+
+    void setBytesOut(long bytesOut) {
+        this.bytesOut = bytesOut;
+    }
+
+    // Файл не менялся с прошлого запуска — результат взят из прошлой обработки
+    public boolean isSkipped() {
+        return skipped;
+    }
+
+    void setSkipped(boolean skipped) {
+        this.skipped = skipped;
+    }
+
+    // С каким режимом ресайза сохранен PDF (null для EPUB и при ошибке до выбора режима)
+    public CropMode getCropMode() {
+        return cropMode;
+    }
+
+    void setCropMode(CropMode cropMode) {
+        this.cropMode = cropMode;
+    }
+
+    // Что предложил автовыбор режима (null, если режим был задан явно)
+    public CropDecision getCropDecision() {
+        return cropDecision;
+    }
+
+    void setCropDecision(CropDecision cropDecision) {
+        this.cropDecision = cropDecision;
+    }
+}
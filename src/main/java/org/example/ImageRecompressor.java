@@ -0,0 +1,221 @@
+package org.example;
+
+import org.apache.pdfbox.cos.COSInteger;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.pdmodel.common.PDStream;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+// Уменьшение картинок страниц под экран читалки и пережатие в JPEG.
+// Чтение и запись потоков PDF — в потоке документа (COS-объекты не потокобезопасны),
+// декодирование, масштаб и кодирование — параллельно в общем пуле.
+// Новые байты пишутся в тот же COSStream: все страницы, ссылающиеся на картинку, получают ее без правки ресурсов
+public class ImageRecompressor {
+
+    private final DeviceProfile profile;
+    private final ExecutorService pool;
+
+    // Сколько картинок одновременно в работе на весь пакет (в памяти — их декодированные пиксели)
+    private final Semaphore inFlight;
+
+    public ImageRecompressor(DeviceProfile profile, ExecutorService pool, int maxInFlight) {
+        this.profile = profile;
+        this.pool = pool;
+        this.inFlight = new Semaphore(Math.max(1, maxInFlight));
+    }
+
+    public DeviceProfile getProfile() {
+        return profile;
+    }
+
+    // Пережимает картинки (каждый поток один раз), возвращает число замененных.
+    // Картинки не больше экрана, с масками и те, что не удалось прочитать, остаются как были
+    public int recompress(List<COSStream> images) throws IOException, InterruptedException {
+        // Уже запущенные задачи не отменяем: разрешение inFlight возвращает только сама задача
+        List<COSStream> targets = new ArrayList<>();
+        List<Future<Encoded>> jobs = new ArrayList<>();
+        for (COSStream stream : images) {
+            int iw = stream.getInt(COSName.WIDTH);
+            int ih = stream.getInt(COSName.HEIGHT);
+            int[] size = targetSize(iw, ih);
+            if (size == null || hasMask(stream)) continue;
+
+            // Разрешение берется до чтения: не больше maxInFlight картинок в памяти на весь пакет
+            inFlight.acquire();
+            Future<Encoded> job;
+            try {
+                job = submit(stream, iw, ih, size[0], size[1]);
+            } catch (IOException | RuntimeException e) {
+                inFlight.release();
+                continue; // не читается (JPX без декодера и т.п.) — оставляем как есть
+            }
+            targets.add(stream);
+            jobs.add(job);
+        }
+
+        int replaced = 0;
+        for (int i = 0; i < jobs.size(); i++) {
+            Encoded encoded;
+            try {
+                encoded = jobs.get(i).get();
+            } catch (ExecutionException e) {
+                continue;
+            }
+            COSStream stream = targets.get(i);
+            // Пережатое вышло не меньше исходного (например, 1-битный скан) — смысла менять нет
+            if (encoded.jpeg.length >= stream.getLength()) continue;
+            replace(stream, encoded);
+            replaced++;
+        }
+        return replaced;
+    }
+
+    // Размер под экран с сохранением пропорций; разворот (альбомная картинка) вписываем в повернутый экран.
+    // null — картинка уже не больше экрана
+    int[] targetSize(int iw, int ih) {
+        if (iw <= 0 || ih <= 0) return null;
+        boolean landscape = iw > ih;
+        int maxW = landscape ? profile.getHeight() : profile.getWidth();
+        int maxH = landscape ? profile.getWidth() : profile.getHeight();
+        if (iw <= maxW && ih <= maxH) return null;
+
+        double scale = Math.min((double) maxW / iw, (double) maxH / ih);
+        return new int[]{Math.max(1, (int) Math.round(iw * scale)), Math.max(1, (int) Math.round(ih * scale))};
+    }
+
+    // Читает исходник в потоке документа и отдает остальное пулу
+    private Future<Encoded> submit(COSStream stream, int iw, int ih, int tw, int th) throws IOException {
+        if (MangaResizer.isPlainJpeg(stream)) {
+            // Обычный JPEG: в пул уходят сжатые байты, декодирование с подвыборкой — уже там
+            byte[] raw;
+            try (InputStream in = stream.createRawInputStream()) {
+                raw = in.readAllBytes();
+            }
+            return pool.submit(() -> {
+                try {
+                    return encode(scale(decodeJpeg(raw, iw, ih, tw, th), tw, th));
+                } finally {
+                    inFlight.release();
+                }
+            });
+        }
+        // Остальное (Flate, CCITT, /Decode, ICC и т.п.) декодирует PDFBox с учетом цветового пространства
+        BufferedImage decoded = new PDImageXObject(new PDStream(stream), null).getImage();
+        return pool.submit(() -> {
+            try {
+                return encode(scale(decoded, tw, th));
+            } finally {
+                inFlight.release();
+            }
+        });
+    }
+
+    // Подвыборка при декодировании — не мельче 2x от цели, чтобы тонкие линии не пропали
+    private static BufferedImage decodeJpeg(byte[] raw, int iw, int ih, int tw, int th) throws IOException {
+        try (ImageInputStream iis = ImageIO.createImageInputStream(new ByteArrayInputStream(raw))) {
+            Iterator<ImageReader> readers = ImageIO.getImageReadersByFormatName("jpeg");
+            if (!readers.hasNext()) throw new IOException("no JPEG reader");
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(iis, true, true);
+                ImageReadParam param = reader.getDefaultReadParam();
+                int step = Math.max(1, Math.min(iw / tw, ih / th) / 2);
+                param.setSourceSubsampling(step, step, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private BufferedImage scale(BufferedImage image, int tw, int th) {
+        BufferedImage src = MangaResizer.halveDownTo(image, tw, th);
+        boolean gray = profile.isGrayscale() || image.getType() == BufferedImage.TYPE_BYTE_GRAY;
+        BufferedImage out = new BufferedImage(tw, th, gray ? BufferedImage.TYPE_BYTE_GRAY : BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = out.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.drawImage(src, 0, 0, tw, th, null);
+        } finally {
+            g.dispose();
+        }
+        return out;
+    }
+
+    private Encoded encode(BufferedImage image) throws IOException {
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("jpeg");
+        if (!writers.hasNext()) throw new IOException("no JPEG writer");
+        ImageWriter writer = writers.next();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ImageOutputStream ios = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(ios);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(profile.getJpegQuality());
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return new Encoded(out.toByteArray(), image.getWidth(), image.getHeight(),
+                image.getType() == BufferedImage.TYPE_BYTE_GRAY);
+    }
+
+    // Тот же объект картинки, новые байты и словарь под них
+    private static void replace(COSStream stream, Encoded encoded) throws IOException {
+        try (OutputStream out = stream.createRawOutputStream()) {
+            out.write(encoded.jpeg);
+        }
+        stream.setItem(COSName.FILTER, COSName.DCT_DECODE);
+        stream.removeItem(COSName.DECODE_PARMS);
+        stream.removeItem(COSName.DECODE);
+        stream.setItem(COSName.WIDTH, COSInteger.get(encoded.width));
+        stream.setItem(COSName.HEIGHT, COSInteger.get(encoded.height));
+        stream.setItem(COSName.BITS_PER_COMPONENT, COSInteger.get(8));
+        stream.setItem(COSName.COLORSPACE, encoded.gray ? COSName.DEVICEGRAY : COSName.DEVICERGB);
+    }
+
+    private static boolean hasMask(COSStream stream) {
+        return stream.containsKey(COSName.SMASK) || stream.containsKey(COSName.MASK)
+                || stream.getBoolean(COSName.IMAGE_MASK, false);
+    }
+
+    // Результат задачи пула: готовый JPEG и его параметры для словаря картинки
+    private static final class Encoded {
+        final byte[] jpeg;
+        final int width;
+        final int height;
+        final boolean gray;
+
+        Encoded(byte[] jpeg, int width, int height, boolean gray) {
+            this.jpeg = jpeg;
+            this.width = width;
+            this.height = height;
+            this.gray = gray;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package org.example;
+
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDDocument;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+// Инкрементальное сохранение PDF: исходные байты копируются как есть, в конец дописываются только измененные объекты.
+// PDFBox 2.0 пишет в инкрементальном обновлении только объекты с needToBeUpdated, до которых можно дойти
+// от каталога по помеченным объектам — поэтому помечаем и саму страницу, и весь путь к ней в дереве страниц.
+public final class IncrementalSave {
+
+    // Защита от зацикленного /Parent в кривых PDF
+    private static final int MAX_TREE_DEPTH = 64;
+
+    private IncrementalSave() {
+    }
+
+    // Страница изменена (дописан content stream, убраны аннотации)
+    public static void markPageChanged(PDDocument doc, COSDictionary pageDict) {
+        COSArray annots = pageDict.getCOSArray(COSName.ANNOTS);
+        if (annots != null) annots.setNeedToBeUpdated(true); // /Annots может быть отдельным объектом
+        markTreePath(doc, pageDict);
+    }
+
+    // Страница удалена: изменились /Kids и /Count у всех ее предков (parent берем ДО removePage)
+    public static void markPageRemoved(PDDocument doc, COSDictionary parent) {
+        if (parent != null) markTreePath(doc, parent);
+    }
+
+    private static void markTreePath(PDDocument doc, COSDictionary node) {
+        doc.getDocumentCatalog().getCOSObject().setNeedToBeUpdated(true);
+        for (int depth = 0; node != null && depth < MAX_TREE_DEPTH; depth++) {
+            node.setNeedToBeUpdated(true);
+            COSArray kids = node.getCOSArray(COSName.KIDS);
+            if (kids != null) kids.setNeedToBeUpdated(true);
+            node = node.getCOSDictionary(COSName.PARENT);
+        }
+    }
+
+    // Можно ли дописать изменения к исходнику: зашифрованные документы пересохраняем целиком
+    public static boolean isSupported(PDDocument doc) {
+        return !doc.isEncrypted();
+    }
+
+    // changed == false — правок нет вовсе, результат просто копия исходника
+    public static void save(PDDocument doc, File input, File output, boolean changed) throws IOException {
+        if (!changed) {
+            Files.copy(input.toPath(), output.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            return;
+        }
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(output))) {
+            doc.saveIncremental(out);
+        }
+    }
+}
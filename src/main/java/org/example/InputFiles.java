@@ -0,0 +1,28 @@
+package org.example;
+
+import java.io.File;
+import java.util.List;
+
+// Какие файлы берем в обработку (общие правила для окна, консоли и других входов)
+public final class InputFiles {
+
+    private InputFiles() {
+    }
+
+    // Рекурсивно собирает .pdf и .epub
+    public static void collect(File root, List<File> result) {
+        if (root.isDirectory()) {
+            File[] children = root.listFiles();
+            if (children != null) {
+                for (File child : children) collect(child, result);
+            }
+        } else if (isSupported(root)) {
+            result.add(root);
+        }
+    }
+
+    public static boolean isSupported(File file) {
+        String name = file.getName().toLowerCase();
+        return name.endsWith(".pdf") || name.endsWith(".epub");
+    }
+}
@@ -0,0 +1,367 @@
+package org.example;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Раздает пакет файлов по воркерам (JobServer) и собирает результаты в одну папку.
+// Файлы идут крупные вперед: каждый слот воркера, освободившись, берет самый большой из оставшихся (LPT) —
+// так толстый omnibus не достается последним и не растягивает весь пакет. Слотов на воркер — его -j плюс один,
+// чтобы следующий файл уже лежал в очереди воркера, пока идет загрузка/выгрузка.
+// Файл, упавший на воркере (или вместе с воркером), повторяется на другом; один воркер — не больше одного раза
+public class JobCoordinator {
+
+    // Результат одного файла
+    public static final class Outcome {
+        final File input;
+        File output;
+        String worker;
+        int attempts;
+        String error;
+        Map<String, Object> result;
+
+        Outcome(File input) {
+            this.input = input;
+        }
+
+        public boolean isOk() {
+            return output != null;
+        }
+
+        public Json toJson() {
+            return Json.object()
+                    .put("file", input.getPath())
+                    .put("ok", isOk())
+                    .put("output", (output != null) ? output.getPath() : null)
+                    .put("worker", worker)
+                    .put("attempts", attempts)
+                    .put("error", error)
+                    .put("result", result);
+        }
+    }
+
+    public interface Listener {
+        void fileFinished(Outcome outcome, int finished, int total);
+    }
+
+    // Сколько раз всего пробуем один файл
+    private static final int MAX_ATTEMPTS = 3;
+    // Сколько секунд воркер держит запрос статуса (long poll)
+    private static final int POLL_SECONDS = 30;
+
+    private final List<String> workers;
+    private final HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build();
+
+    // Общая очередь: файлы по убыванию размера; доступ — под this
+    private final List<Task> pending = new ArrayList<>();
+    private final Set<String> liveWorkers = new LinkedHashSet<>();
+    private int remaining;
+    private int finished;
+
+    // Задания, которые сейчас на воркерах (url + "/jobs/" + id) — их отменяет cancelInFlight
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+
+    // workers — адреса вида http://127.0.0.1:8601
+    public JobCoordinator(List<String> workers) {
+        this.workers = new ArrayList<>(workers);
+    }
+
+    public List<Outcome> process(List<File> inputs, File outputDir, Listener listener) throws InterruptedException {
+        List<Outcome> outcomes = new ArrayList<>();
+        synchronized (this) {
+            for (File input : inputs) {
+                Outcome outcome = new Outcome(input);
+                outcomes.add(outcome);
+                pending.add(new Task(input, outcome));
+            }
+            pending.sort(Comparator.comparingLong((Task t) -> t.size).reversed());
+            remaining = pending.size();
+            finished = 0;
+            liveWorkers.addAll(workers);
+        }
+
+        List<Thread> slots = new ArrayList<>();
+        for (String worker : workers) {
+            int count = slotsOf(worker);
+            if (count == 0) {
+                workerDied(worker, listener);
+                continue;
+            }
+            for (int i = 0; i < count; i++) {
+                Thread slot = new Thread(() -> runSlot(worker, outputDir, listener), "coordinator-" + worker + "-" + i);
+                slot.setDaemon(true);
+                slot.start();
+                slots.add(slot);
+            }
+        }
+        try {
+            for (Thread slot : slots) slot.join();
+        } finally {
+            for (Thread slot : slots) slot.interrupt();
+        }
+        return outcomes;
+    }
+
+    // Статистика воркера (GET /stats); null — не ответил
+    public Map<String, Object> stats(String worker) {
+        try {
+            HttpResponse<String> response = client.send(HttpRequest.newBuilder(URI.create(worker + "/stats"))
+                    .timeout(Duration.ofSeconds(10)).build(), HttpResponse.BodyHandlers.ofString());
+            return (response.statusCode() == 200) ? Json.parseObject(response.body()) : null;
+        } catch (IOException | IllegalArgumentException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    // Прерванный пакет: задания, уже отданные воркерам, снимаются (иначе воркеры доделывают их впустую)
+    public void cancelInFlight() {
+        for (String job : inFlight) {
+            try {
+                client.send(HttpRequest.newBuilder(URI.create(job)).DELETE().timeout(Duration.ofSeconds(5)).build(),
+                        HttpResponse.BodyHandlers.discarding());
+            } catch (IOException e) {
+                // Воркер уже недоступен
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private int slotsOf(String worker) {
+        Map<String, Object> stats = stats(worker);
+        if (stats == null) return 0;
+        Object parallelism = stats.get("parallelism");
+        return (parallelism instanceof Number) ? ((Number) parallelism).intValue() + 1 : 2;
+    }
+
+    private void runSlot(String worker, File outputDir, Listener listener) {
+        Task task;
+        while ((task = next(worker)) != null) {
+            try {
+                String error = runOnWorker(worker, task, outputDir);
+                if (error == null) {
+                    done(task, listener);
+                } else {
+                    retry(task, worker, error, listener);
+                }
+            } catch (IOException e) {
+                // Связи с воркером нет: файл — другим, этот воркер больше не используем
+                retry(task, worker, "worker unavailable: " + e, listener);
+                workerDied(worker, listener);
+                return;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    // Отправить, дождаться, забрать результат, удалить задание на воркере; null — успех, иначе ошибка файла
+    private String runOnWorker(String worker, Task task, File outputDir) throws IOException, InterruptedException {
+        String name = URLEncoder.encode(task.input.getName(), StandardCharsets.UTF_8);
+        HttpResponse<String> submitted = client.send(
+                HttpRequest.newBuilder(URI.create(worker + "/jobs?name=" + name))
+                        .POST(HttpRequest.BodyPublishers.ofFile(task.input.toPath())).build(),
+                HttpResponse.BodyHandlers.ofString());
+        if (submitted.statusCode() != 202) return "rejected: " + submitted.body().trim();
+
+        String job = worker + "/jobs/" + Json.parseObject(submitted.body()).get("id");
+        inFlight.add(job);
+        try {
+            Map<String, Object> status;
+            do {
+                HttpResponse<String> response = client.send(
+                        HttpRequest.newBuilder(URI.create(job + "?wait=" + POLL_SECONDS)).build(),
+                        HttpResponse.BodyHandlers.ofString());
+                if (response.statusCode() != 200) return "job lost: " + response.body().trim();
+                status = Json.parseObject(response.body());
+            } while (JobServer.State.QUEUED.name().equals(status.get("state"))
+                    || JobServer.State.RUNNING.name().equals(status.get("state")));
+
+            task.outcome.result = asMap(status.get("result"));
+            if (!JobServer.State.DONE.name().equals(status.get("state"))) {
+                Map<String, Object> result = task.outcome.result;
+                return "failed: " + ((result != null) ? result.get("error") : status.get("state"));
+            }
+
+            Path output = outputDir.toPath().resolve(new File(String.valueOf(status.get("output"))).getName());
+            HttpResponse<Path> downloaded = client.send(HttpRequest.newBuilder(URI.create(job + "/result")).build(),
+                    HttpResponse.BodyHandlers.ofFile(output));
+            if (downloaded.statusCode() != 200) {
+                Files.deleteIfExists(output);
+                return "download failed: HTTP " + downloaded.statusCode();
+            }
+            task.outcome.output = output.toFile();
+            return null;
+        } finally {
+            inFlight.remove(job);
+            try {
+                client.send(HttpRequest.newBuilder(URI.create(job)).DELETE().build(), HttpResponse.BodyHandlers.discarding());
+            } catch (IOException e) {
+                // Файлы задания останутся во временной папке воркера до его остановки
+            }
+        }
+    }
+
+    // Самый большой файл, который этот воркер еще не ронял; null — работы для него больше не будет
+    private synchronized Task next(String worker) {
+        while (true) {
+            if (remaining == 0 || !liveWorkers.contains(worker)) return null;
+            for (int i = 0; i < pending.size(); i++) {
+                Task task = pending.get(i);
+                if (!task.failedOn.contains(worker)) {
+                    pending.remove(i);
+                    task.outcome.attempts++;
+                    task.outcome.worker = worker;
+                    return task;
+                }
+            }
+            // Все оставшееся — на других воркерах или уже падало здесь; ждем: может вернуться на повтор
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+    }
+
+    private synchronized void done(Task task, Listener listener) {
+        task.outcome.error = null;
+        complete(task, listener);
+    }
+
+    private synchronized void retry(Task task, String worker, String error, Listener listener) {
+        task.failedOn.add(worker);
+        task.outcome.error = error;
+        if (task.outcome.attempts >= MAX_ATTEMPTS || task.failedOn.containsAll(liveWorkers)) {
+            complete(task, listener);
+            return;
+        }
+        // Обратно в очередь на свое место по размеру
+        int at = 0;
+        while (at < pending.size() && pending.get(at).size >= task.size) at++;
+        pending.add(at, task);
+        notifyAll();
+    }
+
+    // Воркер пропал: файлы, которые больше некому попробовать, считаются неудачными
+    private synchronized void workerDied(String worker, Listener listener) {
+        if (!liveWorkers.remove(worker)) return;
+        for (Task task : new ArrayList<>(pending)) {
+            if (liveWorkers.isEmpty() || task.failedOn.containsAll(liveWorkers)) {
+                pending.remove(task);
+                if (task.outcome.error == null) task.outcome.error = "no worker available";
+                complete(task, listener);
+            }
+        }
+        notifyAll();
+    }
+
+    private void complete(Task task, Listener listener) {
+        remaining--;
+        finished++;
+        listener.fileFinished(task.outcome, finished, finished + remaining);
+        notifyAll();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> asMap(Object value) {
+        return (value instanceof Map) ? (Map<String, Object>) value : null;
+    }
+
+    // Локальные воркеры для одной машины: тот же jar, та же JVM, адрес каждый печатает первой строкой
+    // ({"serving":"http://127.0.0.1:PORT"}); ядра делятся поровну, если -j не задан явно
+    public static List<Process> spawnWorkers(int count, List<String> workerArgs, List<String> urls) throws IOException {
+        String java = ProcessHandle.current().info().command()
+                .orElse(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        List<String> args = new ArrayList<>(workerArgs);
+        if (!args.contains("-j") && !args.contains("--parallelism")) {
+            args.add("-j");
+            args.add(Integer.toString(Math.max(1, Runtime.getRuntime().availableProcessors() / count)));
+        }
+        // Индекс мусорных страниц у всех воркеров один и тот же файл: читают все, пишет только ручное --junk-add,
+        // иначе воркеры перезаписывали бы его друг за другом
+        if (!args.contains("--no-junk-index") && !args.contains("--junk-index-readonly")) {
+            args.add("--junk-index-readonly");
+        }
+
+        List<Process> processes = new ArrayList<>();
+        try {
+            for (int i = 0; i < count; i++) {
+                List<String> command = new ArrayList<>();
+                command.add(java);
+                command.add("-cp");
+                command.add(System.getProperty("java.class.path"));
+                command.add(Main.class.getName());
+                command.add("--serve");
+                command.add("127.0.0.1:0");
+                command.addAll(args);
+                Process process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+                processes.add(process);
+            }
+            for (Process process : processes) {
+                BufferedReader out = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+                String line = out.readLine();
+                if (line == null) throw new IOException("worker exited with code " + process.waitFor());
+                urls.add(String.valueOf(Json.parseObject(line).get("serving")));
+                // Остальной вывод воркера не нужен, но труба не должна переполниться
+                Thread drain = new Thread(() -> {
+                    try {
+                        while (out.readLine() != null) {
+                            // пропускаем
+                        }
+                    } catch (IOException e) {
+                        // Воркер завершился
+                    }
+                }, "worker-output-" + processes.indexOf(process));
+                drain.setDaemon(true);
+                drain.start();
+            }
+            return processes;
+        } catch (IOException | RuntimeException e) {
+            for (Process process : processes) process.destroy();
+            throw e;
+        } catch (InterruptedException e) {
+            for (Process process : processes) process.destroy();
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while starting workers");
+        }
+    }
+
+    // Один файл в очереди
+    private static final class Task {
+        final File input;
+        final long size;
+        final Outcome outcome;
+        final Set<String> failedOn = new HashSet<>();
+
+        Task(File input, Outcome outcome) {
+            this.input = input;
+            this.size = input.length();
+            this.outcome = outcome;
+        }
+    }
+}
@@ -0,0 +1,394 @@
+package org.example;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+// Воркер для распределенной обработки: тот же конвейер (BatchProcessor), но файлы приходят по HTTP.
+//   POST   /jobs?name=Том1.pdf    тело — файл; ответ — статус задания (202)
+//   GET    /jobs/{id}[?wait=S]    статус; с wait — ждет завершения до S секунд (long poll)
+//   GET    /jobs/{id}/result      результат потоком (409, пока не готов)
+//   DELETE /jobs/{id}             отмена / удаление вместе с файлами
+//   GET    /stats                 очередь и пропускная способность — для подбора числа воркеров
+// Задания из очереди забираются пачками по -j и идут в обычную пакетную обработку, как в WatchFolderService.
+// Файлы заданий — во временной папке воркера; отмененное на ходу дорабатывается, но результат выбрасывается
+public class JobServer {
+
+    public enum State { QUEUED, RUNNING, DONE, FAILED }
+
+    // Дольше статус не держим открытым (клиент повторит запрос)
+    private static final int MAX_WAIT_SECONDS = 60;
+
+    private final BatchProcessor processor;
+    private final int maxBatch;
+    private final HttpServer http;
+    private final ExecutorService httpPool;
+    private final Path workDir;
+    private final Path resultsDir;
+
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+    private final LinkedBlockingDeque<Job> queue = new LinkedBlockingDeque<>();
+    private final AtomicLong nextId = new AtomicLong();
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicInteger done = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder busyMillis = new LongAdder();
+    private final long startedAt = System.currentTimeMillis();
+
+    private Thread runner;
+
+    public JobServer(BatchOptions options, InetSocketAddress address) throws IOException {
+        // Каждое задание — новый файл во временной папке: журнал обработанного тут не нужен
+        options.setSkipUnchanged(false);
+        this.processor = new BatchProcessor(options, null);
+        this.maxBatch = options.getParallelism();
+        this.workDir = Files.createTempDirectory("manga-cleaner-jobs");
+        this.resultsDir = Files.createDirectory(workDir.resolve("results"));
+
+        http = HttpServer.create(address, 0);
+        // Long poll держит поток на запрос — пул без верхней границы
+        AtomicInteger threadIds = new AtomicInteger();
+        httpPool = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "job-http-" + threadIds.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        http.setExecutor(httpPool);
+        http.createContext("/jobs", this::handleJobs);
+        http.createContext("/stats", this::handleStats);
+    }
+
+    public void start() {
+        runner = new Thread(this::drainQueue, "job-runner");
+        runner.setDaemon(true);
+        runner.start();
+        http.start();
+    }
+
+    public String getUrl() {
+        InetSocketAddress address = http.getAddress();
+        return "http://" + address.getHostString() + ":" + address.getPort();
+    }
+
+    // Останавливает прием и удаляет файлы заданий (то, что еще обрабатывается, дорабатывает поток-демон)
+    public void stop() {
+        http.stop(0);
+        httpPool.shutdownNow();
+        if (runner != null) runner.interrupt();
+        deleteTree(workDir);
+    }
+
+    // Пока не прерван поток (Ctrl+C в консоли)
+    public void join() throws InterruptedException {
+        runner.join();
+    }
+
+    // --- Обработка ---
+
+    // Пачка из очереди: до -j заданий с разными именами файлов (результаты пачки пишутся в одну папку)
+    private void drainQueue() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                List<Job> batch = new ArrayList<>();
+                batch.add(queue.take());
+                Set<String> names = new HashSet<>();
+                names.add(batch.get(0).name);
+                for (Iterator<Job> it = queue.iterator(); it.hasNext() && batch.size() < maxBatch; ) {
+                    Job job = it.next();
+                    if (names.add(job.name) && queue.remove(job)) batch.add(job);
+                }
+                try {
+                    runBatch(batch);
+                } catch (RuntimeException e) {
+                    // Задания пачки уже помечены FAILED; воркер продолжает со следующей пачкой
+                    System.err.println("Batch failed: " + e);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void runBatch(List<Job> batch) throws InterruptedException {
+        Map<Path, Job> byInput = new HashMap<>();
+        List<File> inputs = new ArrayList<>();
+        for (Job job : batch) {
+            job.state = State.RUNNING;
+            byInput.put(job.input, job);
+            inputs.add(job.input.toFile());
+        }
+        running.addAndGet(batch.size());
+        long start = System.currentTimeMillis();
+        Throwable error = null;
+        try {
+            processor.process(inputs, resultsDir.toFile(), new BatchProcessor.Listener() {
+                @Override
+                public void fileFinished(FileResult result, int finished, int total) {
+                    finish(byInput.get(result.getInput().toPath()), result);
+                }
+            });
+        } catch (RuntimeException | Error e) {
+            error = e;
+            throw e;
+        } finally {
+            busyMillis.add(System.currentTimeMillis() - start);
+            running.addAndGet(-batch.size());
+            // Файлы, по которым результата так и не было (упала вся пачка, прервали поток), — ошибка,
+            // иначе клиент ждал бы задание в RUNNING вечно
+            for (Job job : batch) {
+                if (job.finished.isDone()) continue;
+                FileResult result = new FileResult(job.input.toFile(), null);
+                result.setError((error != null) ? error : new IllegalStateException("batch ended without a result"));
+                finish(job, result);
+            }
+        }
+    }
+
+    // Под блокировкой задания: поток пачки может завершить то же задание ошибкой, пока рабочий поток еще отдает результат
+    private void finish(Job job, FileResult result) {
+        if (job == null) return;
+        synchronized (job) {
+            if (job.finished.isDone()) return;
+            complete(job, result);
+        }
+        // Отменили, пока обрабатывался: результат никому не нужен
+        if (!jobs.containsKey(job.id)) deleteTree(job.dir);
+    }
+
+    // Результат — из общей папки пачки в папку задания, пока следующая пачка не записала файл с тем же именем
+    private void complete(Job job, FileResult result) {
+        Path output = null;
+        if (result.isOk() && result.getOutput() != null) {
+            try {
+                output = Files.move(result.getOutput().toPath(), job.dir.resolve(result.getOutput().getName()),
+                        StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                result.setError(e);
+            }
+        }
+        job.result = result;
+        job.output = output;
+        job.state = (output != null) ? State.DONE : State.FAILED;
+        (job.state == State.DONE ? done : failed).incrementAndGet();
+        bytesIn.add(result.getBytesIn());
+        job.finished.complete(null);
+    }
+
+    // --- HTTP ---
+
+    private void handleJobs(HttpExchange ex) throws IOException {
+        try {
+            String[] parts = ex.getRequestURI().getPath().split("/");
+            // "", "jobs", [id], ["result"]
+            String method = ex.getRequestMethod();
+            if (parts.length == 2 && method.equals("POST")) {
+                submit(ex);
+                return;
+            }
+            Job job = (parts.length >= 3) ? jobs.get(parts[2]) : null;
+            if (job == null) {
+                send(ex, 404, Json.object().put("error", "no such job"));
+            } else if (parts.length == 3 && method.equals("GET")) {
+                int wait = Math.min(MAX_WAIT_SECONDS, intParam(ex, "wait"));
+                if (wait > 0) {
+                    try {
+                        job.finished.get(wait, TimeUnit.SECONDS);
+                    } catch (TimeoutException e) {
+                        // Отдаем текущий статус
+                    } catch (Exception e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                send(ex, 200, job.toJson());
+            } else if (parts.length == 4 && parts[3].equals("result") && method.equals("GET")) {
+                sendResult(ex, job);
+            } else if (parts.length == 3 && method.equals("DELETE")) {
+                cancel(job);
+                send(ex, 200, job.toJson());
+            } else {
+                send(ex, 405, Json.object().put("error", "unsupported request"));
+            }
+        } finally {
+            ex.close();
+        }
+    }
+
+    private void submit(HttpExchange ex) throws IOException {
+        String name = param(ex, "name");
+        // Только имя файла, без путей
+        name = (name != null) ? new File(name).getName() : "";
+        if (!InputFiles.isSupported(new File(name))) {
+            send(ex, 400, Json.object().put("error", "name must be a .pdf or .epub file name"));
+            return;
+        }
+        String id = Long.toString(nextId.incrementAndGet());
+        Path dir = Files.createDirectory(workDir.resolve(id));
+        Path input = Files.createDirectory(dir.resolve("in")).resolve(name);
+        try (InputStream body = ex.getRequestBody()) {
+            Files.copy(body, input);
+        } catch (IOException e) {
+            deleteTree(dir);
+            throw e;
+        }
+        Job job = new Job(id, name, dir, input);
+        jobs.put(id, job);
+        queue.add(job);
+        send(ex, 202, job.toJson());
+    }
+
+    private void sendResult(HttpExchange ex, Job job) throws IOException {
+        if (job.state != State.DONE) {
+            send(ex, 409, job.toJson());
+            return;
+        }
+        Path output = job.output;
+        ex.getResponseHeaders().set("Content-Type", contentType(output.getFileName().toString()));
+        ex.getResponseHeaders().set("Content-Disposition", "attachment; filename=\"" + output.getFileName() + "\"");
+        ex.sendResponseHeaders(200, Files.size(output));
+        try (OutputStream out = ex.getResponseBody()) {
+            Files.copy(output, out);
+        }
+    }
+
+    // В очереди — не обработается; на ходу — результат выбросится в finish; готовое — удаляется сразу
+    private void cancel(Job job) {
+        jobs.remove(job.id);
+        if (queue.remove(job) || job.finished.isDone()) deleteTree(job.dir);
+    }
+
+    private void handleStats(HttpExchange ex) throws IOException {
+        try {
+            send(ex, 200, stats());
+        } finally {
+            ex.close();
+        }
+    }
+
+    // Пропускная способность — по времени работы, а не с момента старта: простаивающий воркер не выглядит медленным
+    Json stats() {
+        long uptime = System.currentTimeMillis() - startedAt;
+        double busySeconds = Math.max(1, busyMillis.sum()) / 1000.0;
+        return Json.object()
+                .put("url", getUrl())
+                .put("parallelism", maxBatch)
+                .put("queued", queue.size())
+                .put("running", running.get())
+                .put("done", done.get())
+                .put("failed", failed.get())
+                .put("uptimeMillis", uptime)
+                .put("busyMillis", busyMillis.sum())
+                .put("utilization", round(busyMillis.sum() / (double) Math.max(1, uptime)))
+                .put("filesPerSecond", round((done.get() + failed.get()) / busySeconds))
+                .put("mbPerSecond", round(bytesIn.sum() / (1024.0 * 1024.0) / busySeconds));
+    }
+
+    private static void send(HttpExchange ex, int status, Json body) throws IOException {
+        byte[] bytes = (body + "\n").getBytes(StandardCharsets.UTF_8);
+        ex.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        ex.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = ex.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static String param(HttpExchange ex, String name) {
+        String query = ex.getRequestURI().getRawQuery();
+        if (query == null) return null;
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = (eq >= 0) ? pair.substring(0, eq) : pair;
+            if (key.equals(name)) {
+                return (eq >= 0) ? URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8) : "";
+            }
+        }
+        return null;
+    }
+
+    private static int intParam(HttpExchange ex, String name) {
+        try {
+            String value = param(ex, name);
+            return (value != null) ? Integer.parseInt(value) : 0;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static String contentType(String fileName) {
+        String name = fileName.toLowerCase();
+        if (name.endsWith(".pdf")) return "application/pdf";
+        if (name.endsWith(".epub")) return "application/epub+zip";
+        if (name.endsWith(".cbz")) return "application/vnd.comicbook+zip";
+        return "application/octet-stream";
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 100) / 100.0;
+    }
+
+    private static void deleteTree(Path root) {
+        try (Stream<Path> files = Files.walk(root)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        } catch (IOException e) {
+            // Временная папка — не страшно
+        }
+    }
+
+    // Одно задание = один файл
+    private static final class Job {
+        final String id;
+        final String name;
+        final Path dir;
+        final Path input;
+        final CompletableFuture<Void> finished = new CompletableFuture<>();
+        volatile State state = State.QUEUED;
+        volatile FileResult result;
+        volatile Path output;
+
+        Job(String id, String name, Path dir, Path input) {
+            this.id = id;
+            this.name = name;
+            this.dir = dir;
+            this.input = input;
+        }
+
+        Json toJson() {
+            FileResult r = result;
+            return Json.object()
+                    .put("id", id)
+                    .put("name", name)
+                    .put("state", state.name())
+                    .put("output", (output != null) ? output.getFileName().toString() : null)
+                    .put("result", (r != null) ? BatchReport.fileJson(r) : null);
+        }
+    }
+}
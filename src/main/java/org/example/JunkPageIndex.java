@@ -0,0 +1,240 @@
+package org.example;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Общий на всю библиотеку индекс известных мусорных страниц: реклама сайта повторяется байт-в-байт (или почти)
+// в сотнях томов, и узнать ее по отпечатку дешевле, чем каждый раз извлекать текст.
+// Поиск — HashMap по точному отпечатку и LSH по dHash (4 полосы по 16 бит); на диске — отсортированный двоичный файл.
+// Пополняется страницами, удаленными эвристикой, и вручную (--junk-add); просмотр и чистка — --junk-list/-remove/-prune
+public class JunkPageIndex {
+
+    // Картинки считаются одной и той же рекламой, если dHash расходится не больше чем на столько бит.
+    // 4 полосы по 16 бит: при расхождении до 3 бит хоть одна полоса совпадает целиком (так и ищем)
+    static final int MAX_VISUAL_DISTANCE = 3;
+    private static final int BANDS = 4;
+
+    private static final int MAGIC = 0x4D434A49; // "MCJI"
+    private static final int VERSION = 1;
+
+    // Одна известная страница
+    public static final class Entry {
+        final long content;
+        final long visual;
+        final String source;
+        int hits;
+        long lastSeen;
+
+        Entry(long content, long visual, String source, int hits, long lastSeen) {
+            this.content = content;
+            this.visual = visual;
+            this.source = source;
+            this.hits = hits;
+            this.lastSeen = lastSeen;
+        }
+
+        // Короткий id для --junk-remove: точный отпечаток в hex
+        public String getId() {
+            return Long.toHexString(content);
+        }
+
+        // dHash главной картинки; 0 — страница без картинки
+        public long getVisual() {
+            return visual;
+        }
+
+        // Откуда страница попала в индекс ("Том1.pdf#3")
+        public String getSource() {
+            return source;
+        }
+
+        // Сколько раз страница нашлась в обработанных томах
+        public int getHits() {
+            return hits;
+        }
+
+        public long getLastSeen() {
+            return lastSeen;
+        }
+    }
+
+    private final Path file;
+    private final Map<Long, Entry> byContent = new HashMap<>();
+    // Полоса dHash (номер полосы в старших битах ключа) -> записи с такой полосой
+    private final Map<Integer, List<Entry>> byBand = new HashMap<>();
+    private boolean dirty;
+
+    private JunkPageIndex(Path file) {
+        this.file = file;
+    }
+
+    // ~/.manga-cleaner/junk-pages.idx — один на все папки результатов
+    public static File defaultFile() {
+        return new File(new File(System.getProperty("user.home"), ".manga-cleaner"), "junk-pages.idx");
+    }
+
+    // Нет файла — пустой индекс; битый файл — тоже пустой (с предупреждением), как и журнал обработки
+    public static JunkPageIndex load(File file) {
+        JunkPageIndex index = new JunkPageIndex(file.toPath());
+        if (!Files.isRegularFile(index.file)) return index;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(index.file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) throw new IOException("unknown format");
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                index.put(new Entry(in.readLong(), in.readLong(), in.readUTF(), in.readInt(), in.readLong()));
+            }
+        } catch (EOFException e) {
+            System.err.println("Индекс мусорных страниц обрезан, прочитано записей: " + index.byContent.size());
+        } catch (IOException e) {
+            System.err.println("Не удалось прочитать " + index.file + ": " + e.getMessage());
+            index.byContent.clear();
+            index.byBand.clear();
+        }
+        return index;
+    }
+
+    public synchronized boolean isEmpty() {
+        return byContent.isEmpty();
+    }
+
+    // Есть ли записи с dHash (иначе искать похожие картинки незачем — их даже не декодируем)
+    public synchronized boolean hasVisual() {
+        for (Entry e : byContent.values()) {
+            if (e.visual != 0) return true;
+        }
+        return false;
+    }
+
+    // Точное совпадение; найденная запись отмечается как встреченная
+    synchronized Entry findContent(long content) {
+        Entry e = (content != 0) ? byContent.get(content) : null;
+        if (e != null) touch(e);
+        return e;
+    }
+
+    // Похожая картинка (dHash в пределах MAX_VISUAL_DISTANCE)
+    synchronized Entry findVisual(long visual) {
+        if (visual == 0) return null;
+        for (int b = 0; b < BANDS; b++) {
+            List<Entry> candidates = byBand.get(bandKey(visual, b));
+            if (candidates == null) continue;
+            for (Entry e : candidates) {
+                if (Long.bitCount(e.visual ^ visual) <= MAX_VISUAL_DISTANCE) {
+                    touch(e);
+                    return e;
+                }
+            }
+        }
+        return null;
+    }
+
+    // Новая мусорная страница; уже известная просто отмечается встреченной
+    synchronized void add(long content, long visual, String source) {
+        if (content == 0) return;
+        Entry known = byContent.get(content);
+        if (known != null) {
+            touch(known);
+            return;
+        }
+        put(new Entry(content, visual, source, 0, System.currentTimeMillis()));
+        dirty = true;
+    }
+
+    // Для просмотра: самые частые первыми
+    public synchronized List<Entry> entries() {
+        List<Entry> list = new ArrayList<>(byContent.values());
+        list.sort(Comparator.comparingInt((Entry e) -> e.hits).reversed().thenComparing(e -> e.source));
+        return list;
+    }
+
+    // Удаляет записи, чей id начинается с prefix; возвращает, сколько удалено
+    public synchronized int remove(String idPrefix) {
+        List<Entry> matched = new ArrayList<>();
+        for (Entry e : byContent.values()) {
+            if (e.getId().startsWith(idPrefix)) matched.add(e);
+        }
+        for (Entry e : matched) unput(e);
+        return matched.size();
+    }
+
+    // Удаляет записи, которые не встречались с момента since (мс); возвращает, сколько удалено
+    public synchronized int pruneNotSeenSince(long since) {
+        List<Entry> stale = new ArrayList<>();
+        for (Entry e : byContent.values()) {
+            if (e.lastSeen < since) stale.add(e);
+        }
+        for (Entry e : stale) unput(e);
+        return stale.size();
+    }
+
+    // Пишет индекс, если он менялся: записи по возрастанию отпечатка, через временный файл и атомарную замену
+    public synchronized void save() throws IOException {
+        if (!dirty) return;
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        List<Entry> sorted = new ArrayList<>(byContent.values());
+        sorted.sort((a, b) -> Long.compareUnsigned(a.content, b.content));
+
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(sorted.size());
+            for (Entry e : sorted) {
+                out.writeLong(e.content);
+                out.writeLong(e.visual);
+                out.writeUTF(e.source);
+                out.writeInt(e.hits);
+                out.writeLong(e.lastSeen);
+            }
+        }
+        try {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+        dirty = false;
+    }
+
+    private void touch(Entry e) {
+        e.hits++;
+        e.lastSeen = System.currentTimeMillis();
+        dirty = true;
+    }
+
+    private void put(Entry e) {
+        byContent.put(e.content, e);
+        if (e.visual == 0) return;
+        for (int b = 0; b < BANDS; b++) byBand.computeIfAbsent(bandKey(e.visual, b), k -> new ArrayList<>()).add(e);
+    }
+
+    private void unput(Entry e) {
+        byContent.remove(e.content);
+        dirty = true;
+        if (e.visual == 0) return;
+        for (int b = 0; b < BANDS; b++) {
+            List<Entry> list = byBand.get(bandKey(e.visual, b));
+            if (list != null) {
+                list.remove(e);
+                if (list.isEmpty()) byBand.remove(bandKey(e.visual, b));
+            }
+        }
+    }
+
+    private static int bandKey(long visual, int band) {
+        return (band << 16) | (int) ((visual >>> (16 * band)) & 0xFFFF);
+    }
+}
@@ -0,0 +1,14 @@
+package org.example;
+
+// Точка входа jar: без аргументов — окно, с аргументами — консольный режим.
+// Класс окна здесь не упоминается напрямую, чтобы консольный запуск не грузил Swing.
+public class Main {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0) {
+            MangaCleanerCli.main(args);
+        } else {
+            Class.forName("org.example.MangaCleanerApp").getMethod("main", String[].class).invoke(null, (Object) args);
+        }
+    }
+}
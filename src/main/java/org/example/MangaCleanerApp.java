@@ -12,12 +12,9 @@ import java.util.concurrent.atomic.AtomicReference;
 
 public class MangaCleanerApp extends JFrame {
 
-    private final PdfWatermarkCleaner pdfCleaner = new PdfWatermarkCleaner();
-    private final EpubWatermarkCleaner epubCleaner = new EpubWatermarkCleaner();
-    private final MangaResizer mangaResizer = new MangaResizer();
-
     private final JLabel statusLabel;
     private final JProgressBar progressBar;
+    private final JComboBox<Object> deviceBox;
 
     public MangaCleanerApp() {
         setTitle("Manga Cleaner v5.2 (Smart Output)");
@@ -39,6 +36,16 @@ public class MangaCleanerApp extends JFrame {
         statusPanel.add(statusLabel, BorderLayout.NORTH);
         statusPanel.add(progressBar, BorderLayout.SOUTH);
 
+        // Под какую читалку уменьшать картинки (первый пункт — оставить как есть)
+        deviceBox = new JComboBox<>();
+        deviceBox.addItem("Картинки как в исходнике");
+        for (DeviceProfile profile : DeviceProfile.PRESETS) deviceBox.addItem(profile);
+        JPanel devicePanel = new JPanel(new BorderLayout(5, 0));
+        devicePanel.setBorder(BorderFactory.createEmptyBorder(5, 5, 0, 5));
+        devicePanel.add(new JLabel("Читалка:"), BorderLayout.WEST);
+        devicePanel.add(deviceBox, BorderLayout.CENTER);
+
+        panel.add(devicePanel, BorderLayout.NORTH);
         panel.add(dropLabel, BorderLayout.CENTER);
         panel.add(statusPanel, BorderLayout.SOUTH);
 
@@ -70,7 +77,7 @@ public class MangaCleanerApp extends JFrame {
                 // Собираем файлы
                 List<File> allFiles = new ArrayList<>();
                 for (File file : droppedFiles) {
-                    collectFiles(file, allFiles);
+                    InputFiles.collect(file, allFiles);
                 }
 
                 if (!allFiles.isEmpty()) {
@@ -83,70 +90,38 @@ public class MangaCleanerApp extends JFrame {
         }
     }
 
-    private void collectFiles(File root, List<File> result) {
-        if (root.isDirectory()) {
-            File[] children = root.listFiles();
-            if (children != null) {
-                for (File child : children) collectFiles(child, result);
-            }
-        } else {
-            String name = root.getName().toLowerCase();
-            if (name.endsWith(".pdf") || name.endsWith(".epub")) {
-                result.add(root);
-            }
-        }
-    }
-
     private void processBatchAsync(List<File> inputs, File outputDir) {
         progressBar.setVisible(true);
         progressBar.setMaximum(inputs.size());
         progressBar.setValue(0);
 
-        new SwingWorker<Void, String>() {
+        // Режим выбирается по каждому тому сам; окно появляется только там, где автовыбор не уверен
+        // (показываем его в EDT, рабочий поток ждет ответа)
+        BatchOptions options = new BatchOptions();
+        options.setCropMode(CropMode.AUTO);
+        Object device = deviceBox.getSelectedItem();
+        if (device instanceof DeviceProfile) options.setDeviceProfile((DeviceProfile) device);
+        BatchProcessor processor = new BatchProcessor(options, (input, preview, totalFiles, suggestion) -> {
+            AtomicReference<CropMode> choice = new AtomicReference<>(CropMode.SKIP);
+            SwingUtilities.invokeAndWait(() -> choice.set(showResizeDialog(preview, input.getName(), suggestion)));
+            return choice.get();
+        });
+
+        new SwingWorker<BatchResult, String>() {
             @Override
-            protected Void doInBackground() throws Exception {
-                AtomicReference<CropMode> batchMode = new AtomicReference<>(null);
-
-                for (int i = 0; i < inputs.size(); i++) {
-                    File input = inputs.get(i);
-                    publish("Обработка (" + (i + 1) + "/" + inputs.size() + "): " + input.getName());
-
-                    // Создаем файл в ЦЕЛЕВОЙ папке (рядом с исходной папкой)
-                    File output = createCleanFile(input, outputDir);
-
-                    try {
-                        String name = input.getName().toLowerCase();
-
-                        if (name.endsWith(".pdf")) {
-                            pdfCleaner.clean(input, output);
-
-                            if (batchMode.get() == null) {
-                                BufferedImage preview = mangaResizer.getPreviewImage(output);
-                                if (preview != null) {
-                                    SwingUtilities.invokeAndWait(() -> {
-                                        CropMode choice = showResizeDialog(preview, input.getName(), inputs.size());
-                                        batchMode.set(choice);
-                                    });
-                                } else {
-                                    batchMode.set(CropMode.SKIP);
-                                }
-                            }
-
-                            if (batchMode.get() != CropMode.SKIP) {
-                                mangaResizer.applyResize(output, batchMode.get());
-                            }
-
-                        } else if (name.endsWith(".epub")) {
-                            epubCleaner.clean(input, output);
-                        }
-                    } catch (Exception e) {
-                        e.printStackTrace();
+            protected BatchResult doInBackground() throws Exception {
+                return processor.process(inputs, outputDir, new BatchProcessor.Listener() {
+                    @Override
+                    public void fileStarted(File input, int started, int total) {
+                        publish("Обработка (" + started + "/" + total + "): " + input.getName());
                     }
 
-                    int progress = i + 1;
-                    SwingUtilities.invokeLater(() -> progressBar.setValue(progress));
-                }
-                return null;
+                    @Override
+                    public void fileFinished(FileResult result, int finished, int total) {
+                        if (!result.isOk()) result.getError().printStackTrace();
+                        SwingUtilities.invokeLater(() -> progressBar.setValue(finished));
+                    }
+                });
             }
 
             @Override
@@ -158,41 +133,68 @@ public class MangaCleanerApp extends JFrame {
             protected void done() {
                 statusLabel.setText("Готово! Файлы сохранены в: " + outputDir.getName());
                 progressBar.setVisible(false);
-                JOptionPane.showMessageDialog(MangaCleanerApp.this,
-                        "Готово!\nФайлы сохранены в папку:\n" + outputDir.getAbsolutePath());
-            }
-        }.execute();
-    }
 
-    // Теперь метод принимает папку назначения
-    private File createCleanFile(File input, File targetDir) {
-        String originalName = input.getName();
-        String namePart;
-        String extPart;
-
-        int dotIndex = originalName.lastIndexOf('.');
-        if (dotIndex >= 0) {
-            namePart = originalName.substring(0, dotIndex);
-            extPart = originalName.substring(dotIndex);
-        } else {
-            namePart = originalName;
-            extPart = "";
-        }
+                StringBuilder message = new StringBuilder("Готово!\nФайлы сохранены в папку:\n" + outputDir.getAbsolutePath());
+                try {
+                    BatchResult batch = get();
+                    FileResult largest = batch.getLargest();
+                    if (largest != null) {
+                        message.append("\n\nПик памяти: ").append(batch.getPeakRssBytes() / (1024 * 1024)).append(" MB")
+                                .append(" (самый большой файл ").append(largest.getInput().getName()).append(": ")
+                                .append(largest.getPeakRssBytes() / (1024 * 1024)).append(" MB");
+                        if (largest.getMemoryPolicy() != null) message.append(", память: ").append(largest.getMemoryPolicy());
+                        message.append(")");
+                    }
+
+                    int prefilterSkipped = batch.getPrefilterSkippedPages();
+                    if (prefilterSkipped > 0) {
+                        message.append("\n\nСтраниц без поиска по тексту (префильтр): ").append(prefilterSkipped);
+                    }
+
+                    String stages = batch.getMetrics().toText();
+                    if (!stages.isEmpty()) {
+                        message.append("\n\nВремя по этапам (подробно в ").append(BatchReport.FILE_NAME).append("):\n").append(stages);
+                    }
+
+                    int skipped = batch.getSkippedCount();
+                    if (skipped > 0) {
+                        message.append("\n\nПропущено (уже обработаны с этими настройками): ").append(skipped);
+                    }
 
-        // Чтобы избежать дублирования имени, если файл уже там есть, можно добавить счетчик,
-        // но пока просто _clean
-        return new File(targetDir, namePart + "_clean" + extPart);
+                    List<FileResult> failed = batch.getFailed();
+                    if (!failed.isEmpty()) {
+                        message.append("\n\nОшибки (").append(failed.size()).append("):");
+                        for (FileResult r : failed) {
+                            message.append("\n").append(r.getInput().getName()).append(": ").append(r.getError().getMessage());
+                        }
+                    }
+                } catch (Exception e) {
+                    message.append("\n\nОшибка: ").append(e.getMessage());
+                }
+                JOptionPane.showMessageDialog(MangaCleanerApp.this, message.toString());
+            }
+        }.execute();
     }
 
-    private CropMode showResizeDialog(BufferedImage image, String filename, int totalFiles) {
-        JDialog dialog = new JDialog(this, "Настройка пакетной обработки", true);
+    // Выбор режима для одного тома, в котором автовыбор не уверен; suggestion — его предположение
+    private CropMode showResizeDialog(BufferedImage image, String filename, CropDecision suggestion) {
+        JDialog dialog = new JDialog(this, "Режим ресайза", true);
         dialog.setLayout(new BorderLayout());
 
         if (image != null) {
-            int h = 500;
+            int h = MangaResizer.PREVIEW_HEIGHT;
             double s = (double) h / image.getHeight();
             int w = (int) (image.getWidth() * s);
-            Image scaled = image.getScaledInstance(w, h, Image.SCALE_SMOOTH);
+            // Превью уже приходит высотой ~500 px; если нет — одно билинейное уменьшение вместо SCALE_SMOOTH
+            Image scaled = image;
+            if (image.getHeight() != h) {
+                BufferedImage resized = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+                Graphics2D g = resized.createGraphics();
+                g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                g.drawImage(image, 0, 0, w, h, null);
+                g.dispose();
+                scaled = resized;
+            }
             dialog.add(new JScrollPane(new JLabel(new ImageIcon(scaled))), BorderLayout.CENTER);
         }
 
@@ -200,24 +202,34 @@ public class MangaCleanerApp extends JFrame {
         btnPanel.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
 
         String headerText = "<html><b>" + filename + "</b><br>" +
-                "Применить ко всем <b>" + totalFiles + "</b> файлам?</html>";
+                "Не удалось уверенно выбрать режим для этого тома.<br>" +
+                "Предположение: <b>" + suggestion + "</b></html>";
         btnPanel.add(new JLabel(headerText));
 
         JButton b1 = new JButton("По ширине (Рекомендую)");
         JButton b2 = new JButton("По высоте");
         JButton b3 = new JButton("Растянуть");
+        JButton b5 = new JButton("По центру (без масштаба)");
+        JButton b6 = new JButton("Обрезать поля скана");
         JButton b4 = new JButton("Только очистка (Без ресайза)");
 
-        b1.setBackground(new Color(220, 255, 220));
+        // Подсвечиваем предложенный автовыбором режим
+        CropMode highlighted = suggestion.getMode();
+        JButton suggested = highlighted == CropMode.FIT_HEIGHT ? b2
+                : highlighted == CropMode.CENTER_ONLY ? b5
+                : highlighted == CropMode.SKIP ? b4 : b1;
+        suggested.setBackground(new Color(220, 255, 220));
 
         final CropMode[] res = {CropMode.SKIP};
 
         b1.addActionListener(e -> { res[0] = CropMode.FIT_WIDTH; dialog.dispose(); });
         b2.addActionListener(e -> { res[0] = CropMode.FIT_HEIGHT; dialog.dispose(); });
         b3.addActionListener(e -> { res[0] = CropMode.STRETCH; dialog.dispose(); });
+        b5.addActionListener(e -> { res[0] = CropMode.CENTER_ONLY; dialog.dispose(); });
+        b6.addActionListener(e -> { res[0] = CropMode.AUTO_TRIM; dialog.dispose(); });
         b4.addActionListener(e -> { res[0] = CropMode.SKIP; dialog.dispose(); });
 
-        btnPanel.add(b1); btnPanel.add(b2); btnPanel.add(b3); btnPanel.add(new JSeparator()); btnPanel.add(b4);
+        btnPanel.add(b1); btnPanel.add(b2); btnPanel.add(b3); btnPanel.add(b5); btnPanel.add(b6); btnPanel.add(new JSeparator()); btnPanel.add(b4);
 
         dialog.add(btnPanel, BorderLayout.EAST);
         dialog.pack();
@@ -233,6 +245,8 @@ public class MangaCleanerApp extends JFrame {
     }
 
     public static void main(String[] args) {
+        // Шрифты и классы PDFBox грузятся, пока пользователь перетаскивает файлы
+        StartupWarmup.startInBackground();
         SwingUtilities.invokeLater(() -> new MangaCleanerApp().setVisible(true));
     }
 }
\ No newline at end of file
@@ -0,0 +1,523 @@
+package org.example;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+// Консольный (headless) запуск того же конвейера, что и в окне: без AWT-окон и без модальных диалогов.
+// На каждый файл печатается строка JSON, в конце — итоговая строка со временем старта и пропускной способностью.
+public class MangaCleanerCli {
+
+    private static final String USAGE = String.join("\n",
+            "Usage: java -jar manga-cleaner.jar [options] <file-or-dir>...",
+            "       ... | java -jar manga-cleaner.jar [options] --stdin",
+            "       java -jar manga-cleaner.jar [options] --watch <inbox-dir>",
+            "       java -jar manga-cleaner.jar [options] --serve [HOST:]PORT",
+            "       java -jar manga-cleaner.jar [options] --workers URL,... | --spawn-workers N <file-or-dir>...",
+            "       java -jar manga-cleaner.jar [--junk-index FILE] --junk-list | --junk-add FILE.pdf:PAGES |",
+            "                                   --junk-remove ID | --junk-prune DAYS",
+            "",
+            "Options:",
+            "  --crop-mode MODE     AUTO | SKIP | FIT_WIDTH | FIT_HEIGHT | STRETCH | CENTER_ONLY | AUTO_TRIM",
+            "                       (default: AUTO)",
+            "  --min-confidence X   AUTO resizes a volume only if sure at least this much, 0..1 (default: 0.75)",
+            "  --device NAME        shrink and recompress page images for an e-reader: kindle-paperwhite |",
+            "                       kindle-scribe | kobo-clara | kobo-libra-colour | tablet | WIDTHxHEIGHT",
+            "  --format FORMAT      pdf | cbz: PDFs saved as comic archives, page images copied as is",
+            "                       (default: pdf; cbz ignores --crop-mode)",
+            "  -j, --parallelism N  files processed at once (default: number of CPUs)",
+            "  -o, --output-dir DIR where *_clean files go (default: parent of the first input)",
+            "  --memory POLICY      auto | main | temp | mixed:<MB> (default: auto)",
+            "  --pattern TEXT       watermark to remove, repeatable (default: oceanofpdf.com, oceanofpdf)",
+            "  --split-pages N      analyse PDFs of at least N pages in parallel page ranges, 0 = off (default: 300)",
+            "  --no-incremental     always rewrite cleaned PDFs in full",
+            "  --no-raster-watermarks",
+            "                       do not look for the watermark stamped into page images of scans",
+            "  --junk-index FILE    index of known junk/ad pages shared by all runs",
+            "                       (default: ~/.manga-cleaner/junk-pages.idx)",
+            "  --no-junk-index      neither recognise nor remember junk pages",
+            "  --junk-index-readonly",
+            "                       recognise junk pages but never write the index file",
+            "  --junk-list          print the index entries, most frequent first",
+            "  --junk-add F:PAGES   add pages of a PDF to the index, e.g. vol1.pdf:1,2,180-182",
+            "  --junk-remove ID     remove entries whose id starts with ID",
+            "  --junk-prune DAYS    remove entries not met in any volume for DAYS days",
+            "  --force              reprocess files already listed as done in the output manifest",
+            "  --stdin              read input paths from stdin, one per line",
+            "  --serve [HOST:]PORT  run as a worker: HTTP job API on this address (default host 127.0.0.1)",
+            "  --workers URL,...    spread the batch over running workers, largest files first,",
+            "                       retrying a failed file on another worker",
+            "  --spawn-workers N    start N local worker JVMs for the batch (processing options are passed on)",
+            "  --warmup             run the whole pipeline once on a built-in sample and exit",
+            "                       (training run for the class-data-sharing archive, see pom.xml)",
+            "  --watch DIR          keep running and clean new files as they finish arriving in DIR",
+            "  -h, --help           show this help");
+
+    public static void main(String[] args) {
+        System.exit(run(args));
+    }
+
+    // Опции обработки, которые передаются запущенным воркерам (--spawn-workers)
+    private static final Set<String> WORKER_OPTIONS = new HashSet<>(Arrays.asList(
+            "--crop-mode", "--min-confidence", "--device", "--format", "-j", "--parallelism", "--memory", "--pattern",
+            "--split-pages", "--no-incremental", "--no-raster-watermarks", "--junk-index", "--no-junk-index"));
+
+    static int run(String[] args) {
+        // Никаких окон: превью не строится, режим ресайза задан заранее (AUTO — по каждому тому без вопросов)
+        System.setProperty("java.awt.headless", "true");
+        long mainStartedMs = System.currentTimeMillis();
+        // Кеш шрифтов и классы PDFBox — пока разбираются аргументы, читается stdin и обходятся папки
+        StartupWarmup.startInBackground();
+
+        BatchOptions options = new BatchOptions();
+        options.setCropMode(CropMode.AUTO);
+        List<String> paths = new ArrayList<>();
+        List<String> patterns = new ArrayList<>();
+        File outputDir = null;
+        boolean readStdin = false;
+        File watchDir = null;
+        List<String[]> junkCommands = new ArrayList<>();
+        boolean warmup = false;
+        String serve = null;
+        List<String> workers = new ArrayList<>();
+        int spawnWorkers = 0;
+        List<String> workerArgs = new ArrayList<>();
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if (WORKER_OPTIONS.contains(arg)) {
+                    workerArgs.add(arg);
+                    if (!arg.startsWith("--no-")) workerArgs.add(value(args, i + 1, arg));
+                }
+                switch (arg) {
+                    case "-h":
+                    case "--help":
+                        System.out.println(USAGE);
+                        return 0;
+                    case "--crop-mode":
+                        options.setCropMode(CropMode.valueOf(value(args, ++i, arg).toUpperCase(Locale.ROOT)));
+                        break;
+                    case "--min-confidence":
+                        options.setAutoCropMinConfidence(Double.parseDouble(value(args, ++i, arg)));
+                        break;
+                    case "--device":
+                        options.setDeviceProfile(DeviceProfile.parse(value(args, ++i, arg)));
+                        break;
+                    case "--format":
+                        options.setOutputFormat(OutputFormat.valueOf(value(args, ++i, arg).toUpperCase(Locale.ROOT)));
+                        break;
+                    case "-j":
+                    case "--parallelism":
+                        options.setParallelism(Integer.parseInt(value(args, ++i, arg)));
+                        break;
+                    case "-o":
+                    case "--output-dir":
+                        outputDir = new File(value(args, ++i, arg));
+                        break;
+                    case "--memory":
+                        options.setMemoryPolicy(parseMemoryPolicy(value(args, ++i, arg)));
+                        break;
+                    case "--pattern":
+                        patterns.add(value(args, ++i, arg));
+                        break;
+                    case "--split-pages":
+                        options.setParallelAnalysisMinPages(Integer.parseInt(value(args, ++i, arg)));
+                        break;
+                    case "--no-incremental":
+                        options.setIncrementalSave(false);
+                        break;
+                    case "--no-raster-watermarks":
+                        options.setRasterWatermarks(false);
+                        break;
+                    case "--junk-index":
+                        options.setJunkIndexFile(new File(value(args, ++i, arg)));
+                        break;
+                    case "--no-junk-index":
+                        options.setJunkIndexFile(null);
+                        break;
+                    case "--junk-index-readonly":
+                        options.setJunkIndexReadOnly(true);
+                        break;
+                    case "--junk-list":
+                        junkCommands.add(new String[]{arg});
+                        break;
+                    case "--junk-add":
+                    case "--junk-remove":
+                    case "--junk-prune":
+                        junkCommands.add(new String[]{arg, value(args, ++i, arg)});
+                        break;
+                    case "--force":
+                        options.setSkipUnchanged(false);
+                        break;
+                    case "--watch":
+                        watchDir = new File(value(args, ++i, arg));
+                        break;
+                    case "--serve":
+                        serve = value(args, ++i, arg);
+                        break;
+                    case "--workers":
+                        for (String url : value(args, ++i, arg).split(",")) {
+                            if (!url.isBlank()) workers.add(url.trim().replaceAll("/+$", ""));
+                        }
+                        break;
+                    case "--spawn-workers":
+                        spawnWorkers = Integer.parseInt(value(args, ++i, arg));
+                        break;
+                    case "--warmup":
+                        warmup = true;
+                        break;
+                    case "--stdin":
+                    case "-":
+                        readStdin = true;
+                        break;
+                    default:
+                        if (arg.startsWith("-")) throw new IllegalArgumentException("unknown option: " + arg);
+                        paths.add(arg);
+                }
+            }
+            if (!patterns.isEmpty()) options.setWatermarkPatterns(patterns);
+            if (readStdin) paths.addAll(readLines());
+        } catch (IllegalArgumentException | IOException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.err.println(USAGE);
+            return 2;
+        }
+
+        if (warmup) {
+            return warmup();
+        }
+
+        if (!junkCommands.isEmpty()) {
+            return junk(options.getJunkIndexFile(), junkCommands);
+        }
+
+        // Строка JSON на каждый файл, как только он готов
+        BatchProcessor.Listener printer = new BatchProcessor.Listener() {
+            @Override
+            public void fileFinished(FileResult result, int finished, int total) {
+                synchronized (System.out) {
+                    System.out.println(BatchReport.fileJson(result));
+                    System.out.flush();
+                }
+            }
+        };
+
+        if (watchDir != null) {
+            return watch(watchDir, outputDir, options, printer);
+        }
+
+        if (serve != null) {
+            return serve(serve, options);
+        }
+
+        List<File> inputs = new ArrayList<>();
+        for (String path : paths) {
+            InputFiles.collect(new File(path), inputs);
+        }
+        if (inputs.isEmpty()) {
+            System.err.println("Не найдено PDF или EPUB файлов.");
+            return 2;
+        }
+
+        // Как и в окне: по умолчанию сохраняем рядом с исходной папкой/файлом
+        if (outputDir == null) {
+            File first = new File(paths.get(0)).getAbsoluteFile();
+            outputDir = first.getParentFile();
+        }
+        if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+            System.err.println("Cannot create output directory: " + outputDir);
+            return 2;
+        }
+
+        if (!workers.isEmpty() || spawnWorkers > 0) {
+            return distribute(inputs, outputDir, workers, spawnWorkers, workerArgs);
+        }
+
+        long jvmStartMs = ManagementFactory.getRuntimeMXBean().getStartTime();
+        long startupMs = mainStartedMs - jvmStartMs;
+        long[] firstFileDoneMs = {0};
+        long batchStart = System.currentTimeMillis();
+
+        BatchResult batch;
+        try {
+            batch = new BatchProcessor(options, null).process(inputs, outputDir, new BatchProcessor.Listener() {
+                @Override
+                public void fileFinished(FileResult result, int finished, int total) {
+                    synchronized (System.out) {
+                        if (firstFileDoneMs[0] == 0) firstFileDoneMs[0] = System.currentTimeMillis() - batchStart;
+                    }
+                    printer.fileFinished(result, finished, total);
+                }
+            });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 1;
+        }
+
+        long bytesIn = 0;
+        for (FileResult r : batch.getResults()) bytesIn += r.getBytesIn();
+        double seconds = Math.max(1, batch.getMillis()) / 1000.0;
+
+        System.out.println(Json.object()
+                .put("summary", true)
+                .put("files", batch.getResults().size())
+                .put("skipped", batch.getSkippedCount())
+                .put("failed", batch.getFailed().size())
+                .put("millis", batch.getMillis())
+                .put("startupMillis", startupMs)
+                .put("firstFileMillis", firstFileDoneMs[0])
+                .put("firstPageMillis", batch.getMetrics().getFirstPageAt() > 0
+                        ? batch.getMetrics().getFirstPageAt() - jvmStartMs : 0)
+                .put("filesPerSecond", round(batch.getResults().size() / seconds))
+                .put("mbPerSecond", round(bytesIn / (1024.0 * 1024.0) / seconds))
+                .put("peakRssBytes", batch.getPeakRssBytes())
+                .put("stages", batch.getMetrics().toJson()));
+
+        return batch.getFailed().isEmpty() ? 0 : 1;
+    }
+
+    // Воркер: HTTP API заданий до Ctrl+C. Первая строка вывода — адрес (по ней его находит --spawn-workers)
+    private static int serve(String address, BatchOptions options) {
+        int colon = address.lastIndexOf(':');
+        JobServer server;
+        try {
+            String host = (colon > 0) ? address.substring(0, colon) : null;
+            int port = Integer.parseInt(address.substring(colon + 1));
+            InetAddress bind = (host != null) ? InetAddress.getByName(host) : InetAddress.getLoopbackAddress();
+            server = new JobServer(options, new InetSocketAddress(bind, port));
+        } catch (NumberFormatException e) {
+            System.err.println("Error: bad --serve address: " + address);
+            return 2;
+        } catch (IOException e) {
+            System.err.println("Error: cannot start server on " + address + ": " + e.getMessage());
+            return 2;
+        }
+        server.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(server::stop, "job-server-stop"));
+        System.out.println(Json.object().put("serving", server.getUrl()));
+        System.out.flush();
+        try {
+            server.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return 0;
+    }
+
+    // Пакет на воркерах: заданных (--workers) и/или запущенных здесь же (--spawn-workers).
+    // Строка JSON на каждый файл, в конце — итог со статистикой каждого воркера
+    private static int distribute(List<File> inputs, File outputDir, List<String> workers, int spawn,
+                                  List<String> workerArgs) {
+        List<String> urls = new ArrayList<>(workers);
+        List<Process> spawned = new ArrayList<>();
+        if (spawn > 0) {
+            try {
+                spawned = JobCoordinator.spawnWorkers(spawn, workerArgs, urls);
+            } catch (IOException e) {
+                System.err.println("Error: cannot start workers: " + e.getMessage());
+                return 1;
+            }
+        }
+        JobCoordinator coordinator = new JobCoordinator(urls);
+        List<Process> processes = spawned;
+        Thread cleanup = new Thread(() -> {
+            coordinator.cancelInFlight();
+            for (Process p : processes) p.destroy();
+        }, "coordinator-stop");
+        Runtime.getRuntime().addShutdownHook(cleanup);
+
+        long start = System.currentTimeMillis();
+        List<JobCoordinator.Outcome> outcomes;
+        try {
+            outcomes = coordinator.process(inputs, outputDir, (outcome, finished, total) -> {
+                synchronized (System.out) {
+                    System.out.println(outcome.toJson());
+                    System.out.flush();
+                }
+            });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 1;
+        }
+        long millis = System.currentTimeMillis() - start;
+
+        List<Map<String, Object>> stats = new ArrayList<>();
+        for (String url : urls) {
+            Map<String, Object> s = coordinator.stats(url);
+            if (s != null) stats.add(s);
+        }
+        Runtime.getRuntime().removeShutdownHook(cleanup);
+        for (Process p : spawned) p.destroy();
+
+        int failed = 0;
+        long bytesIn = 0;
+        for (JobCoordinator.Outcome o : outcomes) {
+            if (!o.isOk()) failed++;
+            bytesIn += o.input.length();
+        }
+        double seconds = Math.max(1, millis) / 1000.0;
+        System.out.println(Json.object()
+                .put("summary", true)
+                .put("files", outcomes.size())
+                .put("failed", failed)
+                .put("millis", millis)
+                .put("filesPerSecond", round(outcomes.size() / seconds))
+                .put("mbPerSecond", round(bytesIn / (1024.0 * 1024.0) / seconds))
+                .put("workers", stats));
+        return (failed == 0) ? 0 : 1;
+    }
+
+    // Обучающий прогон без входных файлов (для архива AppCDS): весь конвейер на образце во временной папке
+    private static int warmup() {
+        try {
+            long millis = StartupWarmup.trainingRun();
+            System.out.println(Json.object().put("warmup", true).put("millis", millis));
+            return 0;
+        } catch (Exception e) {
+            System.err.println("Error: warm-up failed: " + e);
+            return 1;
+        }
+    }
+
+    // Режим папки входящих: работает до Ctrl+C; результаты по умолчанию — рядом с папкой, как и для обычного запуска
+    private static int watch(File watchDir, File outputDir, BatchOptions options, BatchProcessor.Listener printer) {
+        if (!watchDir.isDirectory()) {
+            System.err.println("Not a directory: " + watchDir);
+            return 2;
+        }
+        if (outputDir == null) outputDir = watchDir.getAbsoluteFile().getParentFile();
+        if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+            System.err.println("Cannot create output directory: " + outputDir);
+            return 2;
+        }
+        try {
+            System.err.println("Watching " + watchDir.getAbsolutePath() + " -> " + outputDir.getAbsolutePath());
+            new WatchFolderService(watchDir, outputDir, options, printer).run();
+            return 0;
+        } catch (IllegalArgumentException e) {
+            System.err.println("Error: " + e.getMessage());
+            return 2;
+        } catch (IOException | IllegalStateException e) {
+            System.err.println("Watch stopped: " + e.getMessage());
+            return 1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 0;
+        }
+    }
+
+    // Обслуживание индекса мусорных страниц: команды по порядку, в конце индекс сохраняется
+    private static int junk(File indexFile, List<String[]> commands) {
+        if (indexFile == null) {
+            System.err.println("Error: junk index is disabled (--no-junk-index)");
+            return 2;
+        }
+        JunkPageIndex index = JunkPageIndex.load(indexFile);
+        try {
+            for (String[] c : commands) {
+                switch (c[0]) {
+                    case "--junk-list":
+                        for (JunkPageIndex.Entry e : index.entries()) {
+                            System.out.println(Json.object()
+                                    .put("id", e.getId())
+                                    .put("visual", e.getVisual() != 0 ? Long.toHexString(e.getVisual()) : null)
+                                    .put("hits", e.getHits())
+                                    .put("lastSeen", Instant.ofEpochMilli(e.getLastSeen()).toString())
+                                    .put("source", e.getSource()));
+                        }
+                        break;
+                    case "--junk-add":
+                        System.err.println("Added pages: " + addJunkPages(index, c[1]));
+                        break;
+                    case "--junk-remove":
+                        System.err.println("Removed entries: " + index.remove(c[1].toLowerCase(Locale.ROOT)));
+                        break;
+                    case "--junk-prune":
+                        long days = Long.parseLong(c[1]);
+                        if (days < 0) throw new IllegalArgumentException("days must be >= 0: " + days);
+                        long since = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(days);
+                        System.err.println("Pruned entries: " + index.pruneNotSeenSince(since));
+                        break;
+                }
+            }
+            index.save();
+            return 0;
+        } catch (IllegalArgumentException | IOException e) {
+            System.err.println("Error: " + e.getMessage());
+            return 2;
+        }
+    }
+
+    // "vol1.pdf:1,2,180-182" (номера страниц с единицы): точный отпечаток и dHash главной картинки каждой страницы
+    private static int addJunkPages(JunkPageIndex index, String spec) throws IOException {
+        int colon = spec.lastIndexOf(':');
+        if (colon < 0) throw new IllegalArgumentException("expected FILE.pdf:PAGES, got " + spec);
+        File pdf = new File(spec.substring(0, colon));
+        List<Integer> pages = new ArrayList<>();
+        for (String part : spec.substring(colon + 1).split(",")) {
+            int dash = part.indexOf('-');
+            int first = Integer.parseInt(part.substring(0, dash < 0 ? part.length() : dash).trim());
+            int last = (dash < 0) ? first : Integer.parseInt(part.substring(dash + 1).trim());
+            for (int p = first; p <= last; p++) pages.add(p);
+        }
+
+        MangaResizer resizer = new MangaResizer();
+        PageFingerprint fingerprint = new PageFingerprint();
+        try (PDDocument doc = MemoryPolicy.AUTO.load(pdf)) {
+            for (int p : pages) {
+                if (p < 1 || p > doc.getNumberOfPages()) throw new IllegalArgumentException("no page " + p + " in " + pdf);
+                PDPage page = doc.getPage(p - 1);
+                MangaResizer.MainImage img = resizer.mainImage(doc, page);
+                long visual = (img != null) ? MangaResizer.visualHash(img) : 0;
+                index.add(fingerprint.content(page), visual, pdf.getName() + "#" + p);
+            }
+        }
+        return pages.size();
+    }
+
+    private static MemoryPolicy parseMemoryPolicy(String value) {
+        String v = value.toLowerCase(Locale.ROOT);
+        if (v.equals("auto")) return MemoryPolicy.AUTO;
+        if (v.equals("main")) return MemoryPolicy.mainMemoryOnly();
+        if (v.equals("temp")) return MemoryPolicy.tempFile();
+        if (v.startsWith("mixed:")) return MemoryPolicy.mixed(Long.parseLong(v.substring(6)) * 1024 * 1024);
+        throw new IllegalArgumentException("unknown memory policy: " + value);
+    }
+
+    private static String value(String[] args, int i, String option) {
+        if (i >= args.length) throw new IllegalArgumentException("missing value for " + option);
+        return args[i];
+    }
+
+    private static List<String> readLines() throws IOException {
+        List<String> lines = new ArrayList<>();
+        BufferedReader in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        String line;
+        while ((line = in.readLine()) != null) {
+            if (!line.isBlank()) lines.add(line.trim());
+        }
+        return lines;
+    }
+
+    private static double round(double v) {
+        return Math.round(v * 100) / 100.0;
+    }
+}
@@ -1,125 +1,692 @@
 package org.example;
 
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
 import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSStream;
 import org.apache.pdfbox.pdmodel.*;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.common.PDStream;
 import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
 import org.apache.pdfbox.rendering.PDFRenderer;
 
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+import java.util.stream.IntStream;
 
 public class MangaResizer {
 
+    // Как открывать PDF в методах, принимающих File
+    private MemoryPolicy memoryPolicy = MemoryPolicy.AUTO;
+
+    // Картинки меньше этого (в пикселях) — иконки и логотипы, а не страница манги
+    private static final int MIN_MAIN_IMAGE_PIXELS = 50000;
+
+    // Разбор картинок на документ: needsResizing и applyResize по одному документу его переиспользуют.
+    // Один MangaResizer обслуживает все рабочие потоки пакета, отсюда synchronized-обертка
+    private final Map<PDDocument, ImageAnalysis> analysisByDoc = Collections.synchronizedMap(new WeakHashMap<>());
+
+    // Сколько страниц тома смотрим для AUTO (в коротком томе — все)
+    private static final int AUTO_SAMPLE_PAGES = 24;
+
+    // Высота превью в диалоге выбора режима
+    public static final int PREVIEW_HEIGHT = 500;
+
+    // AUTO_TRIM: поля ищем на картинке примерно такой высоты (подвыборка при декодировании)
+    private static final int TRIM_ANALYSIS_HEIGHT = 800;
+
+    // Поиск полей и водяного знака в картинках: сколько картинок тома разбирается за раз
+    // (в памяти — их сжатые байты и уменьшенные копии)
+    private static final int ANALYSIS_CHUNK = 64;
+
+    // Последние превью по входным файлам (LRU): повторный выбор по тому же тому не декодирует картинку заново
+    private static final int PREVIEW_CACHE_SIZE = 16;
+    private final Map<String, BufferedImage> previewCache = Collections.synchronizedMap(
+            new LinkedHashMap<String, BufferedImage>(PREVIEW_CACHE_SIZE, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, BufferedImage> eldest) {
+                    return size() > PREVIEW_CACHE_SIZE;
+                }
+            });
+
+    public void setMemoryPolicy(MemoryPolicy memoryPolicy) {
+        this.memoryPolicy = memoryPolicy;
+    }
+
     // ПРОВЕРКА: Нужно ли растягивать?
     public boolean needsResizing(File file) {
-        try (PDDocument doc = PDDocument.load(file)) {
-            // Проверяем несколько страниц
-            int checkLimit = Math.min(doc.getNumberOfPages(), 5);
-
-            for (int i = 0; i < checkLimit; i++) {
-                PDPage page = doc.getPage(i);
-                PDImageXObject img = findMainImage(page);
-
-                if (img != null) {
-                    float pageWidth = page.getMediaBox().getWidth();
-                    // Если картинка меньше 99% ширины страницы — покажем окно!
-                    // (Сделал 0.99 специально, чтобы окно точно появилось)
-                    if (img.getWidth() < pageWidth * 0.99) {
-                        return true;
-                    }
-                }
-            }
+        try (PDDocument doc = memoryPolicy.load(file)) {
+            return needsResizing(doc);
         } catch (Exception e) {
             e.printStackTrace();
         }
         return false;
     }
 
+    public boolean needsResizing(PDDocument doc) throws IOException {
+        return chooseMode(doc).getMode() != CropMode.SKIP;
+    }
+
+    // Режим для тома по выборке страниц: читаются только словари страниц и картинок, пиксели не декодируются.
+    // Каждая страница голосует за режим, уверенность — доля голосов за победителя
+    public CropDecision chooseMode(PDDocument doc) {
+        int total = doc.getNumberOfPages();
+        // Обложку (первую страницу) ресайз не трогает — и в оценке она не участвует
+        int first = (total > 1) ? 1 : 0;
+        int candidates = total - first;
+        if (candidates <= 0) return new CropDecision(CropMode.SKIP, 1.0, 0);
+
+        ImageAnalysis analysis = analysisOf(doc);
+        int samples = Math.min(candidates, AUTO_SAMPLE_PAGES);
+        Map<CropMode, Integer> votes = new EnumMap<>(CropMode.class);
+        for (int s = 0; s < samples; s++) {
+            // Равномерно по всему тому, а не только начало
+            int index = first + (int) ((long) s * candidates / samples);
+            PDPage page = doc.getPage(index);
+            votes.merge(vote(page, analysis.mainImage(page)), 1, Integer::sum);
+        }
+
+        CropMode best = CropMode.SKIP;
+        int bestVotes = 0;
+        for (Map.Entry<CropMode, Integer> e : votes.entrySet()) {
+            if (e.getValue() > bestVotes) {
+                best = e.getKey();
+                bestVotes = e.getValue();
+            }
+        }
+        return new CropDecision(best, (double) bestVotes / samples, samples);
+    }
+
+    // Главные картинки всех страниц без повторов: поток, общий для нескольких страниц, — один раз
+    List<COSStream> mainImageStreams(PDDocument doc) {
+        ImageAnalysis analysis = analysisOf(doc);
+        Set<COSStream> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        List<COSStream> streams = new ArrayList<>();
+        for (PDPage page : doc.getPages()) {
+            MainImage img = analysis.mainImage(page);
+            if (img != null && seen.add(img.stream)) streams.add(img.stream);
+        }
+        return streams;
+    }
+
+    // Голос одной страницы. Размер картинки в пикселях сравнивается с листом в пунктах — так же, как рисует ресайз
+    private static CropMode vote(PDPage page, MainImage img) {
+        // Страница без крупной картинки (текст, оглавление) — ресайзить нечего
+        if (img == null) return CropMode.SKIP;
+
+        PDRectangle box = page.getMediaBox();
+        float fillW = img.width / box.getWidth();
+        float fillH = img.height / box.getHeight();
+
+        // Картинка уже закрывает лист
+        if (fillW >= 0.99f && fillH >= 0.99f) return CropMode.SKIP;
+        // Почти во весь лист: масштаб почти не изменится, достаточно выровнять по центру
+        if (fillW >= 0.9f && fillH >= 0.9f) return CropMode.CENTER_ONLY;
+        // Картинка относительно шире листа — по ширине она встанет целиком; выше — по высоте
+        float imageAspect = (float) img.height / img.width;
+        float pageAspect = box.getHeight() / box.getWidth();
+        return (imageAspect <= pageAspect * 1.02f) ? CropMode.FIT_WIDTH : CropMode.FIT_HEIGHT;
+    }
+
     // Создание картинки для превью (берем 3-ю страницу, чтобы не обложку)
     public BufferedImage getPreviewImage(File file) throws IOException {
-        try (PDDocument doc = PDDocument.load(file)) {
-            int total = doc.getNumberOfPages();
-            if (total < 1) return null;
+        BufferedImage cached = previewCache.get(previewKey(file));
+        if (cached != null) return cached;
+        try (PDDocument doc = memoryPolicy.load(file)) {
+            return getPreviewImage(file, doc);
+        }
+    }
+
+    // Превью уже открытого документа с запоминанием по исходному файлу:
+    // тот же файл (путь, размер, время изменения) второй раз не декодируется
+    public BufferedImage getPreviewImage(File source, PDDocument doc) throws IOException {
+        String key = previewKey(source);
+        BufferedImage cached = previewCache.get(key);
+        if (cached != null) return cached;
+
+        BufferedImage preview = getPreviewImage(doc);
+        if (preview != null) previewCache.put(key, preview);
+        return preview;
+    }
+
+    // Превью высотой PREVIEW_HEIGHT: сначала пробуем уменьшенное декодирование главной картинки страницы,
+    // если не вышло — рендер страницы с низким разрешением
+    public BufferedImage getPreviewImage(PDDocument doc) throws IOException {
+        int total = doc.getNumberOfPages();
+        if (total < 1) return null;
+
+        // Берем страницу из середины начала (индекс 2), если страниц мало — последнюю
+        int pageIndex = (total > 3) ? 2 : total - 1;
+        PDPage page = doc.getPage(pageIndex);
+
+        MainImage img = analysisOf(doc).mainImage(page);
+        if (img != null) {
+            BufferedImage thumbnail = thumbnailFromImage(page, img);
+            if (thumbnail != null) return thumbnail;
+        }
+
+        PDFRenderer renderer = new PDFRenderer(doc);
+        float scale = PREVIEW_HEIGHT / page.getCropBox().getHeight();
+        return renderer.renderImage(pageIndex, Math.min(1.0f, scale));
+    }
+
+    // Лист страницы с главной картинкой, декодированной сразу в размер превью (подвыборка ImageIO для JPEG).
+    // Картинка ставится по центру в натуральную величину (пиксель = пункт, как считает и ресайз),
+    // не больше листа. null — картинку так не прочитать (не JPEG, CMYK, маски и т.п.)
+    private static BufferedImage thumbnailFromImage(PDPage page, MainImage img) {
+        if (!isPlainJpeg(img.stream)) return null;
+
+        PDRectangle box = page.getCropBox();
+        float pw = box.getWidth();
+        float ph = box.getHeight();
+        float k = PREVIEW_HEIGHT / ph; // пунктов -> пикселей превью
+        float fit = Math.min(1f, Math.min(pw / img.width, ph / img.height));
+        int drawW = Math.max(1, Math.round(img.width * fit * k));
+        int drawH = Math.max(1, Math.round(img.height * fit * k));
 
-            // Берем страницу из середины начала (индекс 2), если страниц мало — последнюю
-            int pageIndex = (total > 3) ? 2 : total - 1;
+        BufferedImage decoded;
+        try (InputStream raw = img.stream.createRawInputStream();
+             ImageInputStream iis = ImageIO.createImageInputStream(raw)) {
+            Iterator<ImageReader> readers = ImageIO.getImageReadersByFormatName("jpeg");
+            if (!readers.hasNext()) return null;
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(iis, true, true);
+                ImageReadParam param = reader.getDefaultReadParam();
+                // Декодируем примерно в 2x от размера превью: тонкие линии рамок не пропадают при билинейном уменьшении
+                int step = Math.max(1, Math.min(img.width / drawW, img.height / drawH) / 2);
+                param.setSourceSubsampling(step, step, 0, 0);
+                decoded = reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+
+        BufferedImage canvas = new BufferedImage(Math.max(1, Math.round(pw * k)), PREVIEW_HEIGHT, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = canvas.createGraphics();
+        try {
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, canvas.getWidth(), canvas.getHeight());
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.drawImage(halveDownTo(decoded, drawW, drawH), (canvas.getWidth() - drawW) / 2, (canvas.getHeight() - drawH) / 2, drawW, drawH, null);
+        } finally {
+            g.dispose();
+        }
+        return canvas;
+    }
 
-            PDFRenderer renderer = new PDFRenderer(doc);
-            return renderer.renderImage(pageIndex, 1.0f);
+    // Уменьшение пополам, пока больше чем вдвое крупнее цели: один билинейный шаг на большое уменьшение теряет тонкие линии
+    static BufferedImage halveDownTo(BufferedImage image, int w, int h) {
+        while (image.getWidth() / 2 >= w && image.getHeight() / 2 >= h) {
+            BufferedImage half = new BufferedImage(image.getWidth() / 2, image.getHeight() / 2, BufferedImage.TYPE_INT_RGB);
+            Graphics2D g = half.createGraphics();
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.drawImage(image, 0, 0, half.getWidth(), half.getHeight(), null);
+            g.dispose();
+            image = half;
         }
+        return image;
+    }
+
+    // Обычный JPEG без масок и /Decode в цветах, которые ImageIO показывает как есть
+    static boolean isPlainJpeg(COSStream stream) {
+        COSBase filter = stream.getDictionaryObject(COSName.FILTER);
+        if (filter instanceof COSArray) {
+            COSArray filters = (COSArray) filter;
+            filter = (filters.size() == 1) ? filters.getObject(0) : null;
+        }
+        if (!COSName.DCT_DECODE.equals(filter)) return false;
+        if (stream.containsKey(COSName.DECODE) || stream.containsKey(COSName.SMASK)
+                || stream.containsKey(COSName.MASK) || stream.getBoolean(COSName.IMAGE_MASK, false)) {
+            return false;
+        }
+        COSBase colorSpace = stream.getDictionaryObject(COSName.COLORSPACE);
+        return colorSpace == null || COSName.DEVICERGB.equals(colorSpace) || COSName.DEVICEGRAY.equals(colorSpace)
+                || (colorSpace instanceof COSArray && COSName.ICCBASED.equals(((COSArray) colorSpace).getObject(0))
+                    && ((COSArray) colorSpace).size() == 2 && iccComponents((COSArray) colorSpace) != 4);
+    }
+
+    private static int iccComponents(COSArray iccBased) {
+        COSBase profile = iccBased.getObject(1);
+        return (profile instanceof COSStream) ? ((COSStream) profile).getInt(COSName.N) : -1;
+    }
+
+    private static String previewKey(File file) {
+        return file.getAbsolutePath() + "|" + file.length() + "|" + file.lastModified();
     }
 
     // ГЛАВНОЕ ДЕЙСТВИЕ
     public void applyResize(File file, CropMode mode) throws IOException {
         if (mode == CropMode.SKIP) return;
 
-        try (PDDocument doc = PDDocument.load(file)) {
-            // Проходим по всем страницам, КРОМЕ ПЕРВОЙ (обложки)
-            // i = 1 (вторая страница)
-            for (int i = 1; i < doc.getNumberOfPages(); i++) {
-                PDPage page = doc.getPage(i);
-                PDImageXObject img = findMainImage(page);
-
-                if (img == null) continue;
-
-                float pw = page.getMediaBox().getWidth();
-                float ph = page.getMediaBox().getHeight();
-                float iw = img.getWidth();
-                float ih = img.getHeight();
-
-                float newW = iw;
-                float newH = ih;
-
-                switch (mode) {
-                    case FIT_WIDTH:
-                        float scaleW = pw / iw;
-                        newW = pw;
-                        newH = ih * scaleW;
-                        break;
-                    case FIT_HEIGHT:
-                        float scaleH = ph / ih;
-                        newW = iw * scaleH;
-                        newH = ph;
-                        break;
-                    case STRETCH:
-                        newW = pw;
-                        newH = ph;
-                        break;
-                }
+        try (PDDocument doc = memoryPolicy.load(file)) {
+            applyResize(doc, mode);
+            doc.save(file);
+        }
+    }
 
-                // Центрируем
-                float x = (pw - newW) / 2;
-                float y = (ph - newH) / 2;
+    // Ресайз уже открытого документа (без сохранения)
+    public void applyResize(PDDocument doc, CropMode mode) throws IOException {
+        if (mode == CropMode.AUTO) mode = chooseMode(doc).getMode();
+        if (mode == CropMode.SKIP) return;
 
-                // Рисуем
-                page.setContents(new java.util.ArrayList<>());
-                try (PDPageContentStream cs = new PDPageContentStream(doc, page, PDPageContentStream.AppendMode.OVERWRITE, true, true)) {
-                    cs.drawImage(img, x, y, newW, newH);
-                }
+        ImageAnalysis analysis = analysisOf(doc);
+        // Одинаковая раскладка -> один общий content stream на все такие страницы
+        Map<Layout, COSStream> drawn = new HashMap<>();
+        // AUTO_TRIM: поля каждой картинки ищутся заранее, параллельно по всему тому
+        Map<COSStream, float[]> trims = (mode == CropMode.AUTO_TRIM) ? trimBounds(doc, analysis) : null;
+
+        // Проходим по всем страницам, КРОМЕ ПЕРВОЙ (обложки)
+        // i = 1 (вторая страница)
+        for (int i = 1; i < doc.getNumberOfPages(); i++) {
+            PDPage page = doc.getPage(i);
+            MainImage img = analysis.mainImage(page);
+
+            if (img == null) continue;
+
+            PDRectangle mediaBox = page.getMediaBox();
+            float[] trim = (trims != null) ? trims.get(img.stream) : null;
+            Layout layout = new Layout(img, mediaBox.getWidth(), mediaBox.getHeight(), mode, trim,
+                    analysis.rasterCovers.get(img.stream));
+
+            // Рисуем (старое содержимое страницы заменяется одной картинкой)
+            COSStream contents = drawn.get(layout);
+            if (contents == null) {
+                contents = layout.draw(doc);
+                drawn.put(layout, contents);
             }
-            doc.save(file);
+            page.getCOSObject().setItem(COSName.CONTENTS, contents);
+        }
+    }
+
+    // Границы содержимого главных картинок (кроме обложки) для AUTO_TRIM; картинки без полей в карту не попадают
+    private Map<COSStream, float[]> trimBounds(PDDocument doc, ImageAnalysis analysis) {
+        return analyzeMainImages(doc, analysis, 1,
+                img -> Math.max(1, Math.round((float) img.height / TRIM_ANALYSIS_HEIGHT)),
+                MarginDetector::contentBounds);
+    }
+
+    // Водяной знак, впечатанный в главные картинки всех страниц (включая обложку): поток картинки ->
+    // прямоугольники надписей {слева, сверху, справа, снизу} в долях картинки. Запоминается в разборе документа —
+    // следующий ресайз этого документа рисует те же прямоугольники поверх картинки в новой раскладке.
+    // По тем же миниатюрам попутно считается dHash (visualHashes потом не декодирует картинки второй раз)
+    Map<COSStream, float[][]> findRasterWatermarks(PDDocument doc, RasterWatermarkDetector detector) {
+        ImageAnalysis analysis = analysisOf(doc);
+        Map<COSStream, Thumbnail> found = analyzeMainImages(doc, analysis, 0,
+                img -> Math.max(1, Math.round((float) img.width / RasterWatermarkDetector.THUMBNAIL_WIDTH)),
+                image -> {
+                    List<float[]> rects = detector.find(image);
+                    return new Thumbnail(rects.isEmpty() ? null : rects.toArray(new float[0][]),
+                            PageFingerprint.visual(image));
+                });
+
+        Map<COSStream, float[][]> covers = new IdentityHashMap<>();
+        Map<COSStream, Long> hashes = new IdentityHashMap<>();
+        for (Map.Entry<COSStream, Thumbnail> e : found.entrySet()) {
+            if (e.getValue().covers != null) covers.put(e.getKey(), e.getValue().covers);
+            if (e.getValue().visual != 0) hashes.put(e.getKey(), e.getValue().visual);
+        }
+        analysis.rasterCovers.putAll(covers);
+        analysis.visualHashes = hashes;
+        return covers;
+    }
+
+    // Прямоугольники водяного знака в картинке (из findRasterWatermarks этого документа); null — знака нет
+    float[][] rasterCovers(PDDocument doc, COSStream image) {
+        return analysisOf(doc).rasterCovers.get(image);
+    }
+
+    // dHash главных картинок всех страниц (поток картинки -> хеш) для поиска известной рекламы в JunkPageIndex.
+    // Однотонные и непрочитанные картинки в карту не попадают. После findRasterWatermarks — готовые, без декодирования
+    Map<COSStream, Long> visualHashes(PDDocument doc) {
+        ImageAnalysis analysis = analysisOf(doc);
+        if (analysis.visualHashes != null) return analysis.visualHashes;
+        analysis.visualHashes = analyzeMainImages(doc, analysis, 0, MangaResizer::visualStep, image -> {
+            long hash = PageFingerprint.visual(image);
+            return hash != 0 ? hash : null;
+        });
+        return analysis.visualHashes;
+    }
+
+    // То же для одной картинки (добавление страницы в индекс вручную); 0 — хеша нет
+    static long visualHash(MainImage img) {
+        try {
+            BufferedImage image = thumbnailSource(img, visualStep(img)).call();
+            return (image != null) ? PageFingerprint.visual(image) : 0;
+        } catch (Exception e) {
+            return 0;
         }
     }
 
-    private PDImageXObject findMainImage(PDPage page) throws IOException {
-        PDResources res = page.getResources();
-        if (res == null) return null;
-        PDImageXObject maxImg = null;
-        int maxPixels = 0;
+    private static int visualStep(MainImage img) {
+        return Math.max(1, img.width / PageFingerprint.VISUAL_WIDTH);
+    }
+
+    // Прогоняет analyzer по уменьшенным (в step раз) копиям главных картинок со страницы fromPage, каждую — один раз.
+    // Потоки PDF читаются по очереди (COS-объекты не потокобезопасны), декодирование с подвыборкой
+    // и анализ — параллельно; порциями, чтобы в памяти не оказался весь том сразу. null от analyzer в карту не попадает
+    private static <T> Map<COSStream, T> analyzeMainImages(PDDocument doc, ImageAnalysis analysis, int fromPage,
+                                                          ToIntFunction<MainImage> stepOf,
+                                                          Function<BufferedImage, T> analyzer) {
+        Set<COSStream> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        List<MainImage> images = new ArrayList<>();
+        for (int i = fromPage; i < doc.getNumberOfPages(); i++) {
+            MainImage img = analysis.mainImage(doc.getPage(i));
+            if (img != null && seen.add(img.stream)) images.add(img);
+        }
+
+        Map<COSStream, T> results = new IdentityHashMap<>();
+        for (int from = 0; from < images.size(); from += ANALYSIS_CHUNK) {
+            List<MainImage> chunk = images.subList(from, Math.min(images.size(), from + ANALYSIS_CHUNK));
+            List<Callable<BufferedImage>> sources = new ArrayList<>(chunk.size());
+            for (MainImage img : chunk) sources.add(thumbnailSource(img, stepOf.applyAsInt(img)));
 
-        for (COSName name : res.getXObjectNames()) {
-            if (res.isImageXObject(name)) {
+            List<T> found = new ArrayList<>(Collections.nCopies(chunk.size(), null));
+            IntStream.range(0, chunk.size()).parallel().forEach(k -> {
                 try {
-                    PDImageXObject img = (PDImageXObject) res.getXObject(name);
-                    int px = img.getWidth() * img.getHeight();
-                    if (px > 50000 && px > maxPixels) { // Игнорируем мелкие иконки
-                        maxPixels = px;
-                        maxImg = img;
-                    }
-                } catch (Exception e) {}
+                    BufferedImage image = sources.get(k).call();
+                    if (image != null) found.set(k, analyzer.apply(image));
+                } catch (Exception e) {
+                    // Не прочиталась — для этой картинки ничего не найдено
+                }
+            });
+            for (int k = 0; k < found.size(); k++) {
+                if (found.get(k) != null) results.put(chunk.get(k).stream, found.get(k));
+            }
+        }
+        return results;
+    }
+
+    // Уменьшенная копия картинки для анализа. Обычный JPEG: байты читаются сейчас, декодируется потом (в пуле);
+    // остальное декодирует PDFBox сразу, в этом потоке
+    private static Callable<BufferedImage> thumbnailSource(MainImage img, int step) {
+        try {
+            if (isPlainJpeg(img.stream)) {
+                byte[] raw;
+                try (InputStream in = img.stream.createRawInputStream()) {
+                    raw = in.readAllBytes();
+                }
+                return () -> decodeJpeg(raw, step);
+            }
+            BufferedImage decoded = new PDImageXObject(new PDStream(img.stream), null).getImage(null, step);
+            return () -> decoded;
+        } catch (IOException | RuntimeException e) {
+            return () -> null;
+        }
+    }
+
+    static BufferedImage decodeJpeg(byte[] raw, int step) throws IOException {
+        try (ImageInputStream iis = ImageIO.createImageInputStream(new ByteArrayInputStream(raw))) {
+            Iterator<ImageReader> readers = ImageIO.getImageReadersByFormatName("jpeg");
+            if (!readers.hasNext()) return null;
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(iis, true, true);
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(step, step, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private ImageAnalysis analysisOf(PDDocument doc) {
+        return analysisByDoc.computeIfAbsent(doc, d -> new ImageAnalysis());
+    }
+
+    // Главная картинка страницы (null — нет); разбор кешируется на документ, как и для ресайза
+    MainImage mainImage(PDDocument doc, PDPage page) {
+        return analysisOf(doc).mainImage(page);
+    }
+
+    // Что дает одна миниатюра при поиске водяного знака
+    private static final class Thumbnail {
+        final float[][] covers;
+        final long visual;
+
+        Thumbnail(float[][] covers, long visual) {
+            this.covers = covers;
+            this.visual = visual;
+        }
+    }
+
+    // Главная картинка страницы: имя в /XObject страницы, поток и размеры (из словаря потока, без декодирования)
+    static final class MainImage {
+        final COSName name;
+        final COSStream stream;
+        final int width;
+        final int height;
+
+        MainImage(COSName name, COSStream stream, int width, int height) {
+            this.name = name;
+            this.stream = stream;
+            this.width = width;
+            this.height = height;
+        }
+    }
+
+    // Куда и в каком размере рисовать картинку. Страницы с одинаковым листом, одинаковыми размерами
+    // картинки и одинаковым ее именем получают байт-в-байт одинаковый content stream: "/Im0 Do"
+    // на каждой странице ссылается на ее собственную картинку из ее же ресурсов
+    private static final class Layout {
+        final COSName name;
+        final float iw;
+        final float ih;
+        final float pw;
+        final float ph;
+        final CropMode mode;
+        // AUTO_TRIM: видимая часть картинки {слева, сверху, справа, снизу} в долях; null — вся картинка
+        final float[] trim;
+        // Водяной знак в самой картинке: белые прямоугольники поверх нее, в тех же долях; null — нет
+        final float[][] covers;
+
+        Layout(MainImage img, float pw, float ph, CropMode mode, float[] trim, float[][] covers) {
+            this.name = img.name;
+            this.iw = img.width;
+            this.ih = img.height;
+            this.pw = pw;
+            this.ph = ph;
+            this.mode = mode;
+            this.trim = trim;
+            this.covers = covers;
+        }
+
+        COSStream draw(PDDocument doc) throws IOException {
+            if (mode == CropMode.AUTO_TRIM) return drawTrimmed(doc);
+
+            float newW = iw;
+            float newH = ih;
+
+            switch (mode) {
+                case FIT_WIDTH:
+                    float scaleW = pw / iw;
+                    newW = pw;
+                    newH = ih * scaleW;
+                    break;
+                case FIT_HEIGHT:
+                    float scaleH = ph / ih;
+                    newW = iw * scaleH;
+                    newH = ph;
+                    break;
+                case STRETCH:
+                    newW = pw;
+                    newH = ph;
+                    break;
+            }
+
+            // Центрируем
+            float x = (pw - newW) / 2;
+            float y = (ph - newH) / 2;
+
+            // То же, что пишет PDPageContentStream.drawImage: q w 0 0 h x y cm /Имя Do Q
+            ByteArrayOutputStream ops = new ByteArrayOutputStream();
+            ops.write(String.format(Locale.ROOT, "q %s 0 0 %s %s %s cm ", num(newW), num(newH), num(x), num(y))
+                    .getBytes(StandardCharsets.US_ASCII));
+            name.writePDF(ops);
+            ops.write(" Do".getBytes(StandardCharsets.US_ASCII));
+            writeCovers(ops);
+            ops.write(" Q\n".getBytes(StandardCharsets.US_ASCII));
+            return write(doc, ops);
+        }
+
+        // Без полей: видимая часть вписывается в лист целиком и центрируется, остальное отрезается обтравкой (re W n).
+        // Сама картинка не перекодируется — меняется только то, где и в каком масштабе она нарисована
+        private COSStream drawTrimmed(PDDocument doc) throws IOException {
+            float[] t = (trim != null) ? trim : new float[]{0, 0, 1, 1};
+            float cw = (t[2] - t[0]) * iw;
+            float ch = (t[3] - t[1]) * ih;
+            float scale = Math.min(pw / cw, ph / ch);
+
+            // Видимая часть на листе
+            float clipW = cw * scale;
+            float clipH = ch * scale;
+            float clipX = (pw - clipW) / 2;
+            float clipY = (ph - clipH) / 2;
+            // Вся картинка сдвигается так, чтобы видимая часть попала в эту рамку (в PDF ось Y снизу вверх)
+            float x = clipX - t[0] * iw * scale;
+            float y = clipY - (1 - t[3]) * ih * scale;
+
+            ByteArrayOutputStream ops = new ByteArrayOutputStream();
+            ops.write(String.format(Locale.ROOT, "q %s %s %s %s re W n %s 0 0 %s %s %s cm ",
+                    num(clipX), num(clipY), num(clipW), num(clipH),
+                    num(iw * scale), num(ih * scale), num(x), num(y)).getBytes(StandardCharsets.US_ASCII));
+            name.writePDF(ops);
+            ops.write(" Do".getBytes(StandardCharsets.US_ASCII));
+            writeCovers(ops);
+            ops.write(" Q\n".getBytes(StandardCharsets.US_ASCII));
+            return write(doc, ops);
+        }
+
+        // После Do матрица cm еще действует: картинка — единичный квадрат, ось Y снизу вверх
+        private void writeCovers(ByteArrayOutputStream ops) throws IOException {
+            if (covers == null) return;
+            StringBuilder sb = new StringBuilder(" 1 g");
+            for (float[] r : covers) {
+                sb.append(' ').append(num(r[0])).append(' ').append(num(1 - r[3]))
+                        .append(' ').append(num(r[2] - r[0])).append(' ').append(num(r[3] - r[1])).append(" re");
+            }
+            sb.append(" f");
+            ops.write(sb.toString().getBytes(StandardCharsets.US_ASCII));
+        }
+
+        private static COSStream write(PDDocument doc, ByteArrayOutputStream ops) throws IOException {
+            COSStream stream = doc.getDocument().createCOSStream();
+            try (OutputStream out = stream.createOutputStream(COSName.FLATE_DECODE)) {
+                ops.writeTo(out);
+            }
+            return stream;
+        }
+
+        private static String num(float v) {
+            return new BigDecimal(Float.toString(v)).setScale(5, RoundingMode.HALF_UP).stripTrailingZeros().toPlainString();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Layout)) return false;
+            Layout other = (Layout) o;
+            return name.equals(other.name) && iw == other.iw && ih == other.ih
+                    && pw == other.pw && ph == other.ph && mode == other.mode && Arrays.equals(trim, other.trim)
+                    && Arrays.deepEquals(covers, other.covers);
+        }
+
+        @Override
+        public int hashCode() {
+            return (Objects.hash(name, iw, ih, pw, ph, mode) * 31 + Arrays.hashCode(trim)) * 31 + Arrays.deepHashCode(covers);
+        }
+    }
+
+    // Кеш разбора картинок одного документа по identity COS-объектов.
+    // Страницы манги часто делят словарь ресурсов или один и тот же поток картинки —
+    // такой XObject разбирается один раз на документ. Документ обрабатывает один поток, блокировки не нужны
+    private static final class ImageAnalysis {
+        // Словарь ресурсов -> главная картинка (null — картинки нет)
+        private final Map<COSDictionary, MainImage> byResources = new IdentityHashMap<>();
+        // Поток -> размеры картинки {w, h} (null — не картинка)
+        private final Map<COSStream, int[]> sizeByStream = new IdentityHashMap<>();
+        // Поток картинки -> где в ней водяной знак (см. findRasterWatermarks)
+        private final Map<COSStream, float[][]> rasterCovers = new IdentityHashMap<>();
+        // Поток картинки -> dHash (null — еще не считали)
+        private Map<COSStream, Long> visualHashes;
+
+        MainImage mainImage(PDPage page) {
+            PDResources res = page.getResources();
+            if (res == null) return null;
+            COSDictionary resDict = res.getCOSObject();
+            if (byResources.containsKey(resDict)) return byResources.get(resDict);
+
+            MainImage main = findMainImage(resDict);
+            byResources.put(resDict, main);
+            return main;
+        }
+
+        // Самая большая картинка в /XObject (мелкие иконки не считаются)
+        private MainImage findMainImage(COSDictionary resDict) {
+            COSDictionary xObjects = resDict.getCOSDictionary(COSName.XOBJECT);
+            if (xObjects == null) return null;
+
+            MainImage maxImg = null;
+            long maxPixels = MIN_MAIN_IMAGE_PIXELS; // Игнорируем мелкие иконки
+            for (COSName name : xObjects.keySet()) {
+                COSBase value = xObjects.getDictionaryObject(name);
+                if (!(value instanceof COSStream)) continue;
+                int[] size = sizeOf((COSStream) value);
+                if (size == null) continue;
+
+                long px = (long) size[0] * size[1];
+                if (px > maxPixels) {
+                    maxPixels = px;
+                    maxImg = new MainImage(name, (COSStream) value, size[0], size[1]);
+                }
+            }
+            return maxImg;
+        }
+
+        private int[] sizeOf(COSStream stream) {
+            if (sizeByStream.containsKey(stream)) return sizeByStream.get(stream);
+
+            int[] size = null;
+            if (COSName.IMAGE.equals(stream.getCOSName(COSName.SUBTYPE))) {
+                size = new int[]{stream.getInt(COSName.WIDTH), stream.getInt(COSName.HEIGHT)};
             }
+            sizeByStream.put(stream, size);
+            return size;
         }
-        return maxImg;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,175 @@
+package org.example;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.Raster;
+
+// Поиск полей скана: белые (бумага) или черные (край сканера) полосы по краям картинки, впеченные в растр.
+// Счет идет простыми циклами прямо по байтам растра, без объектов на пиксель; пыль и шум в пределах NOISE не мешают
+public final class MarginDetector {
+
+    // Яркость не ниже — бумага, не выше — черная рамка
+    private static final int WHITE = 200;
+    private static final int BLACK = 55;
+
+    // Доля "не фоновых" пикселей в строке/столбце, которая еще считается шумом
+    private static final double NOISE = 0.005;
+
+    // Если содержимого меньше этой доли по стороне — это почти пустая страница (заголовок главы и т.п.), не режем
+    private static final double MIN_CONTENT = 0.5;
+
+    // Запас вокруг найденного содержимого (сглаженные края линий не обрезаются)
+    private static final double PADDING = 0.01;
+
+    // Поля тоньше этого не стоят обрезки
+    private static final double MIN_TRIM = 0.01;
+
+    private MarginDetector() {
+    }
+
+    // Границы содержимого в долях картинки {слева, сверху, справа, снизу} (отсчет от левого верхнего угла).
+    // null — обрезать нечего или небезопасно
+    public static float[] contentBounds(BufferedImage image) {
+        Pixels px = Pixels.of(image);
+        int w = px.width;
+        int h = px.height;
+        if (w < 8 || h < 8) return null;
+
+        int[] nonWhite = new int[Math.max(w, h)];
+        int[] nonBlack = new int[Math.max(w, h)];
+        int x0 = 0, x1 = w, y0 = 0, y1 = h;
+        // Рамка по бокам мешает увидеть пустые строки (и наоборот) — поэтому два круга: строки, потом столбцы в найденных строках
+        for (int round = 0; round < 2 && x0 < x1 && y0 < y1; round++) {
+            px.countRows(x0, x1, y0, y1, nonWhite, nonBlack);
+            int tolerance = Math.max(1, (int) ((x1 - x0) * NOISE));
+            y0 = skipMargin(nonWhite, nonBlack, y0, y1, 1, tolerance, y0 == 0);
+            y1 = skipMargin(nonWhite, nonBlack, y1 - 1, y0 - 1, -1, tolerance, y1 == h) + 1;
+            if (y0 >= y1) break;
+
+            px.countColumns(x0, x1, y0, y1, nonWhite, nonBlack);
+            tolerance = Math.max(1, (int) ((y1 - y0) * NOISE));
+            x0 = skipMargin(nonWhite, nonBlack, x0, x1, 1, tolerance, x0 == 0);
+            x1 = skipMargin(nonWhite, nonBlack, x1 - 1, x0 - 1, -1, tolerance, x1 == w) + 1;
+        }
+
+        if (x1 - x0 < w * MIN_CONTENT || y1 - y0 < h * MIN_CONTENT) return null;
+        if (x0 < w * MIN_TRIM && w - x1 < w * MIN_TRIM && y0 < h * MIN_TRIM && h - y1 < h * MIN_TRIM) return null;
+
+        int padX = (int) Math.ceil(w * PADDING);
+        int padY = (int) Math.ceil(h * PADDING);
+        return new float[]{
+                (float) Math.max(0, x0 - padX) / w,
+                (float) Math.max(0, y0 - padY) / h,
+                (float) Math.min(w, x1 + padX) / w,
+                (float) Math.min(h, y1 + padY) / h};
+    }
+
+    // Идет от края (from) внутрь (step = +1/-1) до первой строки/столбца с содержимым; end — не включая.
+    // Порядок как в скане: снаружи черный край сканера, за ним белая бумага. Черное после белого — уже
+    // содержимое (рамка панели), поэтому черное снимается только с самого края картинки (atEdge)
+    private static int skipMargin(int[] nonWhite, int[] nonBlack, int from, int end, int step, int tolerance,
+                                  boolean atEdge) {
+        int i = from;
+        while (atEdge && i != end && nonBlack[i] <= tolerance) i += step;
+        while (i != end && nonWhite[i] <= tolerance) i += step;
+        return i;
+    }
+
+    // Яркость пикселей прямо из байтов растра (серый, RGB/BGR, с альфой или без)
+    static final class Pixels {
+        final byte[] data;
+        final int width;
+        final int height;
+        final int pixelStride;
+        final int scanlineStride;
+        final int offset;
+        final int r, g, b; // смещения каналов внутри пикселя; для серого все три равны
+        final boolean gray;
+
+        private Pixels(byte[] data, int width, int height, int pixelStride, int scanlineStride, int offset,
+                       int r, int g, int b) {
+            this.data = data;
+            this.width = width;
+            this.height = height;
+            this.pixelStride = pixelStride;
+            this.scanlineStride = scanlineStride;
+            this.offset = offset;
+            this.r = r;
+            this.g = g;
+            this.b = b;
+            this.gray = r == g && g == b;
+        }
+
+        static Pixels of(BufferedImage image) {
+            Raster raster = image.getRaster();
+            if (raster.getDataBuffer() instanceof DataBufferByte && raster.getSampleModel() instanceof ComponentSampleModel
+                    && (raster.getNumBands() == 1 || raster.getNumBands() >= 3)) {
+                ComponentSampleModel sm = (ComponentSampleModel) raster.getSampleModel();
+                int[] bands = sm.getBandOffsets();
+                int offset = ((DataBufferByte) raster.getDataBuffer()).getOffset()
+                        - raster.getSampleModelTranslateY() * sm.getScanlineStride()
+                        - raster.getSampleModelTranslateX() * sm.getPixelStride();
+                byte[] data = ((DataBufferByte) raster.getDataBuffer()).getData();
+                if (raster.getNumBands() == 1) {
+                    return new Pixels(data, raster.getWidth(), raster.getHeight(), sm.getPixelStride(),
+                            sm.getScanlineStride(), offset, bands[0], bands[0], bands[0]);
+                }
+                return new Pixels(data, raster.getWidth(), raster.getHeight(), sm.getPixelStride(),
+                        sm.getScanlineStride(), offset, bands[0], bands[1], bands[2]);
+            }
+            // Редкие форматы (int-пиксели, 16 бит, палитра) — один раз перерисовываем в серый
+            BufferedImage gray = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_BYTE_GRAY);
+            Graphics2D g = gray.createGraphics();
+            g.drawImage(image, 0, 0, null);
+            g.dispose();
+            return of(gray);
+        }
+
+        int lum(int base) {
+            if (gray) return data[base + r] & 0xFF;
+            return ((data[base + r] & 0xFF) * 77 + (data[base + g] & 0xFF) * 150 + (data[base + b] & 0xFF) * 29) >> 8;
+        }
+
+        // Яркость строк y0..y1 подряд в out (ширина строки — width)
+        void luminance(int y0, int y1, int[] out) {
+            int i = 0;
+            for (int y = y0; y < y1; y++) {
+                int base = offset + y * scanlineStride;
+                for (int x = 0; x < width; x++, base += pixelStride) out[i++] = lum(base);
+            }
+        }
+
+        // Счетчики по строкам y0..y1 внутри столбцов x0..x1
+        void countRows(int x0, int x1, int y0, int y1, int[] nonWhite, int[] nonBlack) {
+            for (int y = y0; y < y1; y++) {
+                int base = offset + y * scanlineStride + x0 * pixelStride;
+                int nw = 0, nb = 0;
+                for (int x = x0; x < x1; x++, base += pixelStride) {
+                    int l = lum(base);
+                    if (l < WHITE) nw++;
+                    if (l > BLACK) nb++;
+                }
+                nonWhite[y] = nw;
+                nonBlack[y] = nb;
+            }
+        }
+
+        // Счетчики по столбцам x0..x1 внутри строк y0..y1 (обход построчный — по памяти подряд)
+        void countColumns(int x0, int x1, int y0, int y1, int[] nonWhite, int[] nonBlack) {
+            for (int x = x0; x < x1; x++) {
+                nonWhite[x] = 0;
+                nonBlack[x] = 0;
+            }
+            for (int y = y0; y < y1; y++) {
+                int base = offset + y * scanlineStride + x0 * pixelStride;
+                for (int x = x0; x < x1; x++, base += pixelStride) {
+                    int l = lum(base);
+                    if (l < WHITE) nonWhite[x]++;
+                    if (l > BLACK) nonBlack[x]++;
+                }
+            }
+        }
+    }
+}
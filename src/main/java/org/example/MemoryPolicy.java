@@ -0,0 +1,112 @@
+package org.example;
+
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.PDDocument;
+
+import java.io.File;
+import java.io.IOException;
+
+// Как PDFBox держит документ: целиком в куче, в куче до лимита (остальное во временный файл) или только во временном файле.
+// Используется всеми местами, где открывается PDF.
+public final class MemoryPolicy {
+
+    public enum Mode {
+        AUTO,        // Выбрать по размеру файла и свободной куче в момент открытия
+        MAIN_MEMORY, // Все в куче (быстрее всего, но omnibus-тома не влезают)
+        MIXED,       // В куче до лимита, дальше временный файл
+        TEMP_FILE    // Только временный файл (минимум кучи)
+    }
+
+    private static final long MB = 1024 * 1024;
+
+    // Сколько кучи нужно документу относительно размера файла в режиме MAIN_MEMORY (разобранные объекты + скретч)
+    private static final int MAIN_MEMORY_FACTOR = 2;
+    private static final long BASE_OVERHEAD = 32 * MB;
+
+    // Меньше этого кучи под скретч давать нет смысла — сразу временный файл
+    private static final long MIN_MIXED_BYTES = 64 * MB;
+
+    public static final MemoryPolicy AUTO = new MemoryPolicy(Mode.AUTO, 0);
+
+    private final Mode mode;
+    private final long maxMainMemoryBytes;
+
+    private MemoryPolicy(Mode mode, long maxMainMemoryBytes) {
+        this.mode = mode;
+        this.maxMainMemoryBytes = maxMainMemoryBytes;
+    }
+
+    public static MemoryPolicy mainMemoryOnly() {
+        return new MemoryPolicy(Mode.MAIN_MEMORY, 0);
+    }
+
+    public static MemoryPolicy mixed(long maxMainMemoryBytes) {
+        if (maxMainMemoryBytes < 1) throw new IllegalArgumentException("memory cap must be > 0: " + maxMainMemoryBytes);
+        return new MemoryPolicy(Mode.MIXED, maxMainMemoryBytes);
+    }
+
+    public static MemoryPolicy tempFile() {
+        return new MemoryPolicy(Mode.TEMP_FILE, 0);
+    }
+
+    // Автовыбор: влезает в доступную кучу целиком — MAIN_MEMORY, иначе MIXED с половиной доступного, иначе TEMP_FILE
+    public static MemoryPolicy choose(long fileSize, long availableHeap) {
+        if (estimateMainMemory(fileSize) <= availableHeap) return mainMemoryOnly();
+        long cap = availableHeap / 2;
+        if (cap >= MIN_MIXED_BYTES) return mixed(cap);
+        return tempFile();
+    }
+
+    // Свободная куча прямо сейчас (с учетом еще не занятой части -Xmx)
+    public static long freeHeap() {
+        Runtime rt = Runtime.getRuntime();
+        return rt.maxMemory() - (rt.totalMemory() - rt.freeMemory());
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public long getMaxMainMemoryBytes() {
+        return maxMainMemoryBytes;
+    }
+
+    // Сколько кучи резервировать под файл при этой политике (для бюджета пакетной обработки)
+    public long estimateHeap(long fileSize) {
+        switch (mode) {
+            case MAIN_MEMORY:
+                return estimateMainMemory(fileSize);
+            case MIXED:
+                return BASE_OVERHEAD + maxMainMemoryBytes;
+            case TEMP_FILE:
+                return BASE_OVERHEAD;
+            default:
+                return estimateMainMemory(fileSize);
+        }
+    }
+
+    public PDDocument load(File file) throws IOException {
+        MemoryPolicy effective = (mode == Mode.AUTO) ? choose(file.length(), freeHeap()) : this;
+        return PDDocument.load(file, effective.toUsageSetting());
+    }
+
+    MemoryUsageSetting toUsageSetting() {
+        switch (mode) {
+            case MIXED:
+                return MemoryUsageSetting.setupMixed(maxMainMemoryBytes);
+            case TEMP_FILE:
+                return MemoryUsageSetting.setupTempFileOnly();
+            default:
+                return MemoryUsageSetting.setupMainMemoryOnly();
+        }
+    }
+
+    private static long estimateMainMemory(long fileSize) {
+        return BASE_OVERHEAD + MAIN_MEMORY_FACTOR * fileSize;
+    }
+
+    @Override
+    public String toString() {
+        return mode == Mode.MIXED ? mode + "(" + maxMainMemoryBytes / MB + " MB)" : mode.toString();
+    }
+}
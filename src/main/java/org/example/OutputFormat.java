@@ -0,0 +1,7 @@
+package org.example;
+
+// В каком виде сохранять очищенный PDF (EPUB всегда остается EPUB)
+public enum OutputFormat {
+    PDF,    // Тот же PDF: очистка, ресайз и пережатие картинок, если заданы
+    CBZ     // Архив картинок страниц для читалок комиксов (CbzExporter); ресайз листа тут не нужен — читалка вписывает сама
+}
@@ -0,0 +1,171 @@
+package org.example;
+
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSBoolean;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSNumber;
+import org.apache.pdfbox.cos.COSObject;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.common.PDStream;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CRC32C;
+
+// Отпечатки страницы для индекса мусорных страниц (JunkPageIndex).
+// content — точный: байты content stream страницы и описания ее XObject, без чтения картинок и разбора текста.
+// visual — dHash главной картинки: та же реклама, пережатая другим инструментом, дает тот же или почти тот же хеш
+final class PageFingerprint {
+
+    // Ширина миниатюры для dHash (картинка декодируется с подвыборкой примерно до нее)
+    static final int VISUAL_WIDTH = 144;
+
+    // Сетка dHash: 9x8 ячеек -> 8x8 сравнений соседей = 64 бита
+    private static final int GRID_W = 9;
+    private static final int GRID_H = 8;
+
+    // Почти однотонная картинка (пустая страница) — ее dHash один шум, такой отпечаток не берем
+    private static final int MIN_CONTRAST = 16;
+
+    private static final int BUFFER = 64 * 1024;
+
+    // Один XObject часто стоит в ресурсах многих страниц (общий словарь) — он хешируется один раз
+    private final Map<COSStream, Long> streamHashes = new IdentityHashMap<>();
+    private final byte[] buffer = new byte[BUFFER];
+
+    // 64 бита: CRC32C и CRC32 (два разных полинома, оба аппаратные) по одним и тем же байтам.
+    // 0 — у страницы нет ни содержимого, ни XObject: такие страницы не различить, отпечатка нет
+    long content(PDPage page) throws IOException {
+        CRC32C high = new CRC32C();
+        CRC32 low = new CRC32();
+        boolean any = false;
+
+        Iterator<PDStream> streams = page.getContentStreams();
+        while (streams.hasNext()) {
+            try (InputStream in = streams.next().createInputStream()) {
+                int n;
+                while ((n = in.read(buffer)) > 0) {
+                    high.update(buffer, 0, n);
+                    low.update(buffer, 0, n);
+                    any = true;
+                }
+            }
+        }
+
+        PDResources res = page.getResources();
+        COSDictionary xObjects = (res != null) ? res.getCOSObject().getCOSDictionary(COSName.XOBJECT) : null;
+        if (xObjects != null) {
+            for (COSName name : xObjects.keySet()) {
+                COSBase value = xObjects.getDictionaryObject(name);
+                if (!(value instanceof COSStream)) continue;
+                byte[] key = name.getName().getBytes(StandardCharsets.UTF_8);
+                high.update(key);
+                low.update(key);
+                long hash = streamHash((COSStream) value);
+                for (int i = 0; i < 8; i++) {
+                    high.update((int) (hash >>> (8 * i)));
+                    low.update((int) (hash >>> (8 * i)));
+                }
+                any = true;
+            }
+        }
+        return any ? (high.getValue() << 32) | low.getValue() : 0;
+    }
+
+    // Картинка — только ее словарь: ключи и простые значения (/Width, /Height, /Filter, /Length ...).
+    // Байты картинки не читаются: отпечаток берется для каждой страницы до префильтра, а полностраничный JPEG —
+    // это мегабайты с диска ради страницы, которая почти всегда не из индекса. Форма — маленький векторный поток,
+    // ее байты (как они лежат в файле) хешируются целиком
+    private long streamHash(COSStream stream) throws IOException {
+        Long cached = streamHashes.get(stream);
+        if (cached != null) return cached;
+        CRC32C high = new CRC32C();
+        CRC32 low = new CRC32();
+        for (Map.Entry<COSName, COSBase> entry : stream.entrySet()) {
+            COSBase value = entry.getValue();
+            if (value instanceof COSObject) value = ((COSObject) value).getObject();
+            String text;
+            if (value instanceof COSName) {
+                text = ((COSName) value).getName();
+            } else if (value instanceof COSNumber || value instanceof COSBoolean) {
+                text = value.toString();
+            } else if (value instanceof COSArray) {
+                // /Filter [/FlateDecode /DCTDecode], /Decode [1 0] — массивы имен и чисел
+                StringBuilder items = new StringBuilder();
+                for (COSBase item : (COSArray) value) {
+                    if (item instanceof COSName) items.append('/').append(((COSName) item).getName());
+                    else if (item instanceof COSNumber) items.append(' ').append(item);
+                }
+                text = items.toString();
+            } else {
+                // Ссылки на цветовое пространство, маски и т.п. — только ключ
+                text = "";
+            }
+            byte[] bytes = (entry.getKey().getName() + "=" + text + ";").getBytes(StandardCharsets.UTF_8);
+            high.update(bytes);
+            low.update(bytes);
+        }
+        if (COSName.FORM.equals(stream.getCOSName(COSName.SUBTYPE))) {
+            try (InputStream in = stream.createRawInputStream()) {
+                int n;
+                while ((n = in.read(buffer)) > 0) {
+                    high.update(buffer, 0, n);
+                    low.update(buffer, 0, n);
+                }
+            }
+        }
+        long hash = (high.getValue() << 32) | low.getValue();
+        streamHashes.put(stream, hash);
+        return hash;
+    }
+
+    // dHash: яркость усредняется в сетку 9x8, бит — светлее ли ячейка своей правой соседки.
+    // 0 — картинка слишком мала или однотонна
+    static long visual(BufferedImage thumbnail) {
+        MarginDetector.Pixels px = MarginDetector.Pixels.of(thumbnail);
+        int w = px.width;
+        int h = px.height;
+        if (w < GRID_W || h < GRID_H) return 0;
+
+        long[] sums = new long[GRID_W * GRID_H];
+        int[] counts = new int[GRID_W * GRID_H];
+        int[] row = new int[w];
+        for (int y = 0; y < h; y++) {
+            px.luminance(y, y + 1, row);
+            int gy = y * GRID_H / h;
+            for (int x = 0; x < w; x++) {
+                int cell = gy * GRID_W + x * GRID_W / w;
+                sums[cell] += row[x];
+                counts[cell]++;
+            }
+        }
+
+        int[] grid = new int[GRID_W * GRID_H];
+        int min = Integer.MAX_VALUE, max = Integer.MIN_VALUE;
+        for (int i = 0; i < grid.length; i++) {
+            grid[i] = (int) (sums[i] / counts[i]);
+            min = Math.min(min, grid[i]);
+            max = Math.max(max, grid[i]);
+        }
+        if (max - min < MIN_CONTRAST) return 0;
+
+        long hash = 0;
+        for (int y = 0; y < GRID_H; y++) {
+            for (int x = 0; x < GRID_W - 1; x++) {
+                hash <<= 1;
+                if (grid[y * GRID_W + x] > grid[y * GRID_W + x + 1]) hash |= 1;
+            }
+        }
+        return hash;
+    }
+}
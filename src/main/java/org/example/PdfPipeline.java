@@ -0,0 +1,149 @@
+package org.example;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+
+// Весь PDF за один проход: открыли один раз -> очистка -> водяной знак в картинках -> превью/выбор режима -> ресайз ->
+// картинки под экран -> сохранили один раз (PDF или CBZ)
+public class PdfPipeline {
+
+    // Решает, какой ресайз применить к уже очищенному документу (например, по превью)
+    public interface CropModeResolver {
+        CropMode resolve(PDDocument cleanedDoc) throws Exception;
+    }
+
+    private final PdfWatermarkCleaner cleaner;
+    private final MangaResizer resizer;
+
+    // Без ресайза дописывать правки к исходнику, а не переписывать весь файл
+    private boolean incrementalSave = true;
+
+    private PipelineMetrics metrics = new PipelineMetrics();
+
+    // Водяной знак, впечатанный в картинки страниц (null — не ищем)
+    private RasterWatermarkCleaner rasterCleaner;
+
+    // Уменьшение картинок под читалку (null — картинки не трогаем)
+    private ImageRecompressor recompressor;
+
+    // Запись в CBZ вместо PDF (null — сохраняем PDF)
+    private CbzExporter cbzExporter;
+
+    // Анализ больших томов диапазонами страниц в этом пуле (null — всегда в одном потоке)
+    private ExecutorService analysisPool;
+    private int analysisThreads;
+    private int parallelAnalysisMinPages;
+
+    // Меньше страниц на диапазон не делим: каждый диапазон заново открывает файл
+    private static final int MIN_PAGES_PER_RANGE = 50;
+
+    public PdfPipeline(PdfWatermarkCleaner cleaner, MangaResizer resizer) {
+        this.cleaner = cleaner;
+        this.resizer = resizer;
+    }
+
+    public void setIncrementalSave(boolean incrementalSave) {
+        this.incrementalSave = incrementalSave;
+    }
+
+    public void setRasterCleaner(RasterWatermarkCleaner rasterCleaner) {
+        this.rasterCleaner = rasterCleaner;
+    }
+
+    public void setRecompressor(ImageRecompressor recompressor) {
+        this.recompressor = recompressor;
+    }
+
+    // CBZ: режим ресайза не выбирается — читалка комиксов сама вписывает картинку в экран
+    public void setCbzExporter(CbzExporter cbzExporter) {
+        this.cbzExporter = cbzExporter;
+    }
+
+    // Тома от minPages страниц анализируются параллельно на threads потоках пула; pool == null — выключено
+    public void setParallelAnalysis(ExecutorService pool, int threads, int minPages) {
+        this.analysisPool = pool;
+        this.analysisThreads = threads;
+        this.parallelAnalysisMinPages = minPages;
+    }
+
+    // Время этапов пишется и сюда, и в очистку
+    public void setMetrics(PipelineMetrics metrics) {
+        this.metrics = metrics;
+        cleaner.setMetrics(metrics);
+    }
+
+    public CleanReport process(File input, File output, MemoryPolicy policy, CropModeResolver resolver) throws Exception {
+        PDDocument loaded;
+        try (PipelineMetrics.Span ignored = metrics.start(PipelineMetrics.Stage.LOAD)) {
+            loaded = policy.load(input);
+        }
+        try (PDDocument doc = loaded) {
+            // --- ЭТАП 1: Водяные знаки и мусорные страницы ---
+            // Анализ (для толстого тома — параллельно по диапазонам страниц), затем правки в этом потоке
+            CleanReport report = cleaner.clean(doc, scan(input, doc), input.getName());
+
+            // --- ЭТАП 2: Водяной знак в пикселях картинок ---
+            // До ресайза: найденное запоминается в resizer, и новая раскладка страниц рисует замазку поверх картинки
+            if (rasterCleaner != null) {
+                try (PipelineMetrics.Span ignored = metrics.start(PipelineMetrics.Stage.RASTER_WATERMARK)) {
+                    report = report.withRasterCoveredPages(rasterCleaner.clean(doc));
+                }
+            }
+
+            // Реклама-картинка, уже известная индексу, узнается по dHash главной картинки и удаляется
+            // (хеши посчитаны по тем же миниатюрам, что и поиск водяного знака, если он был)
+            report = report.withKnownImagePagesRemoved(cleaner.removeKnownImagePages(doc, resizer));
+
+            // --- ЭТАП 3: Выбор режима (превью берется из этого же документа) ---
+            CropMode mode = null;
+            if (cbzExporter == null) {
+                try (PipelineMetrics.Span ignored = metrics.start(PipelineMetrics.Stage.CROP_MODE)) {
+                    mode = resolver.resolve(doc);
+                }
+            }
+
+            // --- ЭТАП 4: Ресайз ---
+            boolean resized = mode != null && mode != CropMode.SKIP;
+            if (resized) {
+                try (PipelineMetrics.Span ignored = metrics.start(PipelineMetrics.Stage.RESIZE)) {
+                    resizer.applyResize(doc, mode);
+                }
+            }
+
+            // --- ЭТАП 5: Картинки под экран читалки ---
+            // После ресайза: раскладка страниц уже посчитана по исходным размерам картинок
+            boolean recompressed = false;
+            if (recompressor != null) {
+                try (PipelineMetrics.Span ignored = metrics.start(PipelineMetrics.Stage.RECOMPRESS)) {
+                    recompressed = recompressor.recompress(resizer.mainImageStreams(doc)) > 0;
+                }
+            }
+
+            // --- ЭТАП 6: Единственная запись на диск ---
+            // Только очистка: исходные байты + инкрементальное обновление (O(правок), а не O(размера файла)).
+            // Ресайз и пережатие переписывают почти весь файл — тут выгоднее обычное полное сохранение.
+            // CBZ: главные картинки уходят в архив байт-в-байт (удаленные страницы и замазка уже учтены)
+            try (PipelineMetrics.Span ignored = metrics.start(PipelineMetrics.Stage.SAVE)) {
+                if (cbzExporter != null) {
+                    cbzExporter.export(doc, output);
+                } else if (incrementalSave && !resized && !recompressed && IncrementalSave.isSupported(doc)) {
+                    IncrementalSave.save(doc, input, output, report.hasChanges());
+                } else {
+                    doc.save(output);
+                }
+            }
+            return report;
+        }
+    }
+
+    private PdfWatermarkCleaner.Scan scan(File input, PDDocument doc) throws IOException, InterruptedException {
+        int pages = doc.getNumberOfPages();
+        int ranges = (analysisPool != null && pages >= parallelAnalysisMinPages)
+                ? Math.min(analysisThreads, pages / MIN_PAGES_PER_RANGE) : 1;
+        if (ranges < 2) return cleaner.scan(doc, 0, pages);
+        return cleaner.scanParallel(input, pages, ranges, analysisPool);
+    }
+}
@@ -1,6 +1,8 @@
 package org.example;
 
+import org.apache.pdfbox.cos.COSDictionary;
 import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSStream;
 import org.apache.pdfbox.pdmodel.*;
 import org.apache.pdfbox.pdmodel.common.PDRectangle;
 import org.apache.pdfbox.pdmodel.interactive.action.PDActionURI;
@@ -10,61 +12,194 @@ import org.apache.pdfbox.text.PDFTextStripper;
 import org.apache.pdfbox.text.TextPosition;
 
 import java.awt.Color;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.OutputStreamWriter;
+import java.io.IOException;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 public class PdfWatermarkCleaner {
 
-    private static final String WATERMARK_TEXT = "oceanofpdf";
+    private final WatermarkMatcher matcher;
+
+    // Как открывать PDF в методах, принимающих File
+    private MemoryPolicy memoryPolicy = MemoryPolicy.AUTO;
+
+    // Куда писать время этапов (BatchProcessor подставляет общий объект пакета)
+    private PipelineMetrics metrics = new PipelineMetrics();
+
+    // Известные мусорные страницы всей библиотеки (null — не ищем и не пополняем)
+    private JunkPageIndex junkIndex;
+
+    public PdfWatermarkCleaner() {
+        this(WatermarkMatcher.DEFAULT);
+    }
+
+    public PdfWatermarkCleaner(WatermarkMatcher matcher) {
+        this.matcher = matcher;
+    }
+
+    public void setMemoryPolicy(MemoryPolicy memoryPolicy) {
+        this.memoryPolicy = memoryPolicy;
+    }
+
+    public void setMetrics(PipelineMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public void setJunkIndex(JunkPageIndex junkIndex) {
+        this.junkIndex = junkIndex;
+    }
 
     public void clean(File input, File output) throws Exception {
-        try (PDDocument doc = PDDocument.load(input)) {
-
-            int totalPages = doc.getNumberOfPages();
-            List<Integer> pagesToRemove = new ArrayList<>();
-
-            for (int i = 0; i < totalPages; i++) {
-                PDPage page = doc.getPage(i);
-                PDRectangle mediaBox = page.getMediaBox();
-                float pageHeight = mediaBox.getHeight();
-
-                // --- ШАГ 1: Поиск текста и анализ содержимого ---
-                WatermarkLocator locator = new WatermarkLocator();
-                locator.setSortByPosition(true);
-                locator.setStartPage(i + 1);
-                locator.setEndPage(i + 1);
-                locator.writeText(doc, new OutputStreamWriter(new ByteArrayOutputStream()));
-
-                boolean foundWatermark = !locator.getFoundAreas().isEmpty();
-
-                // Если водяной знак найден, решаем: удалять страницу или чистить
-                if (foundWatermark) {
-                    boolean hasImages = hasImages(page);
-                    int textLength = locator.getFullTextLength();
-
-                    // ЭВРИСТИКА:
-                    // Если на странице НЕТ картинок И мало текста (меньше 300 символов) -> Это мусорная страница
-                    if (!hasImages && textLength < 300) {
-                        pagesToRemove.add(i);
-                        continue; // Переходим к следующей, эту удалим позже
-                    }
+        try (PDDocument doc = memoryPolicy.load(input)) {
+            clean(doc);
+            doc.save(output);
+        }
+    }
 
-                    // Иначе (если это манга или страница книги) -> Чистим (код ниже)
+    // Чистит уже открытый документ (без сохранения)
+    public CleanReport clean(PDDocument doc) throws IOException {
+        return clean(doc, scan(doc, 0, doc.getNumberOfPages()), "");
+    }
+
+    // Анализ страниц [from, to) уже открытого документа: префильтр, затем поиск текста.
+    // Документ только читается; страницы вне диапазона в результате остаются null
+    Scan scan(PDDocument doc, int from, int to) throws IOException {
+        int totalPages = doc.getNumberOfPages();
+
+        // --- ШАГ 0: Известные мусорные страницы — по отпечатку, до любого анализа; их дальше не разбираем ---
+        boolean[] knownJunk = new boolean[totalPages];
+        if (junkIndex != null && !junkIndex.isEmpty()) {
+            try (PipelineMetrics.Span ignored = metrics.start(PipelineMetrics.Stage.JUNK_INDEX)) {
+                PageFingerprint fingerprint = new PageFingerprint();
+                for (int i = from; i < to; i++) {
+                    knownJunk[i] = junkIndex.findContent(fingerprint.content(doc.getPage(i))) != null;
                 }
+            }
+        }
+
+        // Префильтр по сырому content stream — где водяного знака точно нет, текст не извлекаем
+        boolean[] toExtract = new boolean[totalPages];
+        int skippedPages = 0;
+        try (PipelineMetrics.Span ignored = metrics.start(PipelineMetrics.Stage.PREFILTER)) {
+            WatermarkPrefilter prefilter = new WatermarkPrefilter(matcher);
+            for (int i = from; i < to; i++) {
+                if (knownJunk[i]) continue;
+                toExtract[i] = prefilter.check(doc.getPage(i)) != WatermarkPrefilter.Verdict.NO_WATERMARK;
+                if (!toExtract[i]) skippedPages++;
+            }
+        }
+
+        // --- ШАГ 1: Поиск текста и анализ содержимого (один проход по диапазону) ---
+        try (PipelineMetrics.Span ignored = metrics.start(PipelineMetrics.Stage.TEXT_EXTRACTION)) {
+            return new Scan(analyze(doc, toExtract, from, to), knownJunk, skippedPages);
+        }
+    }
+
+    // Анализ большого документа диапазонами страниц параллельно. PDDocument не потокобезопасен, поэтому у каждого
+    // диапазона свой экземпляр того же файла только для чтения (со скретчем во временном файле, а не в куче).
+    // Результаты сливаются в один Scan, правки потом вносит clean(doc, scan) в одном потоке
+    Scan scanParallel(File input, int totalPages, int ranges, ExecutorService pool) throws IOException, InterruptedException {
+        List<Future<Scan>> parts = new ArrayList<>();
+        for (int r = 0; r < ranges; r++) {
+            int from = (int) ((long) totalPages * r / ranges);
+            int to = (int) ((long) totalPages * (r + 1) / ranges);
+            parts.add(pool.submit(() -> {
+                PDDocument handle;
+                try (PipelineMetrics.Span ignored = metrics.start(PipelineMetrics.Stage.LOAD)) {
+                    handle = MemoryPolicy.tempFile().load(input);
+                }
+                try (PDDocument doc = handle) {
+                    return scan(doc, from, to);
+                }
+            }));
+        }
+
+        PageAnalysis[] pages = new PageAnalysis[totalPages];
+        boolean[] knownJunk = new boolean[totalPages];
+        int skippedPages = 0;
+        try {
+            for (Future<Scan> part : parts) {
+                Scan scan = part.get();
+                for (int i = 0; i < totalPages; i++) {
+                    if (scan.pages[i] != null) pages[i] = scan.pages[i];
+                    knownJunk[i] |= scan.knownJunk[i];
+                }
+                skippedPages += scan.prefilterSkippedPages;
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new IOException(cause);
+        } finally {
+            for (Future<Scan> part : parts) part.cancel(true);
+        }
+        return new Scan(pages, knownJunk, skippedPages);
+    }
+
+    // Правки по готовому анализу: удаление ссылок, замазка, удаление мусорных страниц.
+    // source — имя файла для индекса мусорных страниц (откуда взялась новая запись)
+    CleanReport clean(PDDocument doc, Scan scan, String source) throws IOException {
+        int totalPages = doc.getNumberOfPages();
+        List<Integer> pagesToRemove = new ArrayList<>();
+        PageAnalysis[] analysis = scan.pages;
+        int editedPages = 0;
+        int knownJunkPages = 0;
+        PageFingerprint fingerprint = new PageFingerprint();
+
+        for (int i = 0; i < totalPages; i++) {
+            PDPage page = doc.getPage(i);
+            PDRectangle mediaBox = page.getMediaBox();
+            float pageHeight = mediaBox.getHeight();
+
+            // Уже известная мусорная страница — удаляем без разбора
+            if (scan.knownJunk[i]) {
+                pagesToRemove.add(i);
+                knownJunkPages++;
+                continue;
+            }
+
+            PageAnalysis info = analysis[i];
+            boolean foundWatermark = !info.foundAreas.isEmpty();
+
+            // Если водяной знак найден, решаем: удалять страницу или чистить
+            if (foundWatermark) {
+                boolean hasImages = info.hasImages;
+                int textLength = info.textLength;
 
-                // --- ШАГ 2: Удаление ссылок (если страницу оставляем) ---
+                // ЭВРИСТИКА:
+                // Если на странице НЕТ картинок И мало текста (меньше 300 символов) -> Это мусорная страница
+                if (!hasImages && textLength < 300) {
+                    pagesToRemove.add(i);
+                    // Запоминаем в индексе: в следующих томах эта страница узнается без извлечения текста
+                    if (junkIndex != null) {
+                        try (PipelineMetrics.Span ignored = metrics.start(PipelineMetrics.Stage.JUNK_INDEX)) {
+                            junkIndex.add(fingerprint.content(page), 0, source + "#" + (i + 1));
+                        }
+                    }
+                    continue; // Переходим к следующей, эту удалим позже
+                }
+
+                // Иначе (если это манга или страница книги) -> Чистим (код ниже)
+            }
+
+            // --- ШАГ 2: Удаление ссылок (если страницу оставляем) ---
+            List<PDAnnotation> toRemove = new ArrayList<>();
+            try (PipelineMetrics.Span ignored = metrics.start(PipelineMetrics.Stage.ANNOTATIONS)) {
                 List<PDAnnotation> annotations = page.getAnnotations();
-                List<PDAnnotation> toRemove = new ArrayList<>();
                 for (PDAnnotation ann : annotations) {
                     if (ann instanceof PDAnnotationLink) {
                         PDAnnotationLink link = (PDAnnotationLink) ann;
                         if (link.getAction() instanceof PDActionURI) {
                             PDActionURI uri = (PDActionURI) link.getAction();
-                            if (uri.getURI() != null && uri.getURI().toLowerCase().contains(WATERMARK_TEXT)) {
+                            if (matcher.containsIn(uri.getURI())) {
                                 toRemove.add(ann);
                             }
                         }
@@ -73,42 +208,87 @@ public class PdfWatermarkCleaner {
                 if (!toRemove.isEmpty()) {
                     annotations.removeAll(toRemove);
                 }
+            }
 
-                // --- ШАГ 3: Визуальная замазка (если страницу оставляем) ---
-                if (foundWatermark) {
-                    List<PDRectangle> areasToCover = locator.getFoundAreas();
-                    if (!areasToCover.isEmpty()) {
-                        try (PDPageContentStream cs = new PDPageContentStream(doc, page, PDPageContentStream.AppendMode.APPEND, true, true)) {
-                            cs.setNonStrokingColor(Color.WHITE);
-
-                            for (PDRectangle rect : areasToCover) {
-                                float yFromBottom = pageHeight - rect.getLowerLeftY();
-                                cs.addRect(
-                                        rect.getLowerLeftX() - 2,
-                                        yFromBottom - 2,
-                                        rect.getWidth() + 6,
-                                        rect.getHeight() + 6
-                                );
-                                cs.fill();
-                            }
+            // Для инкрементального сохранения: страница и путь к ней будут дописаны в конец файла
+            if (!toRemove.isEmpty() || foundWatermark) {
+                IncrementalSave.markPageChanged(doc, page.getCOSObject());
+                editedPages++;
+            }
+
+            // --- ШАГ 3: Визуальная замазка (если страницу оставляем) ---
+            if (foundWatermark) {
+                List<PDRectangle> areasToCover = info.foundAreas;
+                if (!areasToCover.isEmpty()) {
+                    try (PipelineMetrics.Span ignored = metrics.start(PipelineMetrics.Stage.COVER);
+                         PDPageContentStream cs = new PDPageContentStream(doc, page, PDPageContentStream.AppendMode.APPEND, true, true)) {
+                        cs.setNonStrokingColor(Color.WHITE);
+
+                        for (PDRectangle rect : areasToCover) {
+                            float yFromBottom = pageHeight - rect.getLowerLeftY();
+                            cs.addRect(
+                                    rect.getLowerLeftX() - 2,
+                                    yFromBottom - 2,
+                                    rect.getWidth() + 6,
+                                    rect.getHeight() + 6
+                            );
+                            cs.fill();
                         }
                     }
                 }
             }
+        }
+
+        // --- ШАГ 4: Физическое удаление мусорных страниц ---
+        removePages(doc, pagesToRemove);
+
+        return new CleanReport(totalPages, pagesToRemove.size(), editedPages, scan.prefilterSkippedPages, 0,
+                knownJunkPages);
+    }
+
+    // Страницы-картинки, похожие на известную рекламу (dHash главной картинки в индексе), удаляются.
+    // Картинки декодируются, только если в индексе вообще есть такие записи; возвращает число удаленных страниц
+    int removeKnownImagePages(PDDocument doc, MangaResizer resizer) throws IOException {
+        if (junkIndex == null || !junkIndex.hasVisual()) return 0;
+        List<Integer> pagesToRemove = new ArrayList<>();
+        try (PipelineMetrics.Span ignored = metrics.start(PipelineMetrics.Stage.JUNK_INDEX)) {
+            Map<COSStream, Long> hashes = resizer.visualHashes(doc);
+            for (int i = 0; i < doc.getNumberOfPages(); i++) {
+                MangaResizer.MainImage img = resizer.mainImage(doc, doc.getPage(i));
+                Long hash = (img != null) ? hashes.get(img.stream) : null;
+                if (hash != null && junkIndex.findVisual(hash) != null) pagesToRemove.add(i);
+            }
+        }
+        removePages(doc, pagesToRemove);
+        return pagesToRemove.size();
+    }
 
-            // --- ШАГ 4: Физическое удаление мусорных страниц ---
-            // Удаляем с конца, чтобы не сбились номера страниц
-            Collections.sort(pagesToRemove, Collections.reverseOrder());
+    // Удаляем с конца, чтобы не сбились номера страниц
+    private void removePages(PDDocument doc, List<Integer> pagesToRemove) {
+        if (pagesToRemove.isEmpty()) return;
+        Collections.sort(pagesToRemove, Collections.reverseOrder());
+        try (PipelineMetrics.Span ignored = metrics.start(PipelineMetrics.Stage.REMOVE_PAGES)) {
             for (Integer pageIndex : pagesToRemove) {
+                COSDictionary parent = doc.getPage(pageIndex).getCOSObject().getCOSDictionary(COSName.PARENT);
                 doc.removePage(pageIndex);
+                IncrementalSave.markPageRemoved(doc, parent);
             }
-
-            doc.save(output);
         }
     }
 
+    // Таблица по страницам: где водяные знаки, сколько текста, есть ли картинки
+    // toExtract — какие страницы реально прогонять через PDFTextStripper (остальные в диапазоне [from, to) остаются пустыми)
+    private PageAnalysis[] analyze(PDDocument doc, boolean[] toExtract, int from, int to) throws IOException {
+        WatermarkLocator locator = new WatermarkLocator(toExtract, matcher, metrics, from, to);
+        locator.setSortByPosition(true);
+        locator.setStartPage(from + 1);
+        locator.setEndPage(to);
+        locator.writeText(doc, Writer.nullWriter());
+        return locator.getPages();
+    }
+
     // Проверка наличия картинок на странице (для Манги)
-    private boolean hasImages(PDPage page) {
+    private static boolean hasImages(PDPage page) {
         PDResources resources = page.getResources();
         if (resources == null) return false;
         for (COSName name : resources.getXObjectNames()) {
@@ -123,20 +303,83 @@ public class PdfWatermarkCleaner {
         return false;
     }
 
+    // Анализ документа (или диапазона страниц) до правок
+    static final class Scan {
+        final PageAnalysis[] pages;
+        // Страницы, узнанные в индексе мусорных страниц (не анализировались)
+        final boolean[] knownJunk;
+        final int prefilterSkippedPages;
+
+        Scan(PageAnalysis[] pages, boolean[] knownJunk, int prefilterSkippedPages) {
+            this.pages = pages;
+            this.knownJunk = knownJunk;
+            this.prefilterSkippedPages = prefilterSkippedPages;
+        }
+    }
+
+    // Результат анализа одной страницы
+    static class PageAnalysis {
+        final List<PDRectangle> foundAreas = new ArrayList<>();
+        int textLength;
+        boolean hasImages;
+    }
+
+    // Один PDFTextStripper на весь документ: страницы разделяем по колбэкам startPage/endPage
     private static class WatermarkLocator extends PDFTextStripper {
-        private final List<PDRectangle> foundAreas = new ArrayList<>();
-        private final StringBuilder fullTextBuilder = new StringBuilder();
+        private final boolean[] toExtract;
+        private final WatermarkMatcher matcher;
+        private final PipelineMetrics metrics;
+        private final PageAnalysis[] pages;
+        private final int from;
+        private final int to;
+        private PageAnalysis current;
 
-        public WatermarkLocator() throws Exception {
+        public WatermarkLocator(boolean[] toExtract, WatermarkMatcher matcher, PipelineMetrics metrics,
+                                int from, int to) throws IOException {
             super();
+            this.toExtract = toExtract;
+            this.matcher = matcher;
+            this.metrics = metrics;
+            this.from = from;
+            this.to = to;
+            pages = new PageAnalysis[toExtract.length];
+            // Страницы без содержимого PDFTextStripper не посещает — для них пустой результат
+            for (int i = from; i < to; i++) {
+                pages[i] = new PageAnalysis();
+            }
+        }
+
+        @Override
+        public void processPage(PDPage page) throws IOException {
+            // Страницу, отсеянную префильтром, не разбираем вовсе
+            if (toExtract[getCurrentPageNo() - 1]) {
+                super.processPage(page);
+            }
+            // Stripper проходит по всем страницам документа; считаем только свой диапазон,
+            // иначе параллельные диапазоны посчитали бы каждую страницу по нескольку раз
+            int index = getCurrentPageNo() - 1;
+            if (index >= from && index < to) metrics.pageProcessed();
+        }
+
+        @Override
+        protected void startPage(PDPage page) throws IOException {
+            super.startPage(page);
+            current = pages[getCurrentPageNo() - 1];
+            current.hasImages = hasImages(page);
+        }
+
+        @Override
+        protected void endPage(PDPage page) throws IOException {
+            super.endPage(page);
+            current = null;
         }
 
         @Override
         protected void writeString(String text, List<TextPosition> textPositions) {
-            if (text != null) {
-                fullTextBuilder.append(text); // Собираем весь текст для подсчета длины
+            if (text != null && current != null) {
+                current.textLength += text.length(); // Считаем длину всего текста страницы
 
-                if (text.toLowerCase().contains(WATERMARK_TEXT)) {
+                if (matcher.containsIn(text)) {
                     float minX = Float.MAX_VALUE;
                     float minY = Float.MAX_VALUE;
                     float maxX = Float.MIN_VALUE;
@@ -156,18 +399,14 @@ public class PdfWatermarkCleaner {
 
                     if (minX != Float.MAX_VALUE) {
                         // Сохраняем координаты (от верха страницы)
-                        foundAreas.add(new PDRectangle(minX, maxY, maxX - minX, maxY - minY));
+                        current.foundAreas.add(new PDRectangle(minX, maxY, maxX - minX, maxY - minY));
                     }
                 }
             }
         }
 
-        public List<PDRectangle> getFoundAreas() {
-            return foundAreas;
-        }
-
-        public int getFullTextLength() {
-            return fullTextBuilder.length();
+        public PageAnalysis[] getPages() {
+            return pages;
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,220 @@
+package org.example;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+// Время по этапам конвейера: счетчики и гистограммы в процессе + события JFR.
+// Пишется из рабочих потоков без блокировок; отчет собирается в конце пакета.
+// Запись в JFR: java -XX:StartFlightRecording=filename=batch.jfr ... — события в категории "Manga Cleaner"
+public class PipelineMetrics {
+
+    public enum Stage {
+        LOAD,
+        // Отпечатки страниц и поиск в индексе известных мусорных страниц
+        JUNK_INDEX,
+        PREFILTER,
+        TEXT_EXTRACTION,
+        // Поиск ссылок на сайт водяного знака — на каждую оставляемую страницу
+        ANNOTATIONS,
+        // Белые прямоугольники поверх найденного — на каждую страницу с находкой
+        COVER,
+        REMOVE_PAGES,
+        // Водяной знак в пикселях картинок: миниатюры, поиск по шаблону, замазка
+        RASTER_WATERMARK,
+        // Превью и выбор режима (первый PDF пакета включает ожидание ответа пользователя)
+        CROP_MODE,
+        RESIZE,
+        // Уменьшение и пережатие картинок под профиль читалки
+        RECOMPRESS,
+        SAVE,
+        EPUB_CLEAN,
+        // Хеши для журнала обработанных файлов
+        MANIFEST
+    }
+
+    // Гистограмма по степеням двойки в микросекундах: 1 мкс ... ~18 минут
+    private static final int BUCKETS = 31;
+
+    private final Map<Stage, StageStats> stages = new EnumMap<>(Stage.class);
+
+    // Когда (мс от эпохи) первая страница пакета прошла анализ; 0 — еще ни одной
+    private final AtomicLong firstPageAt = new AtomicLong();
+
+    public PipelineMetrics() {
+        for (Stage stage : Stage.values()) stages.put(stage, new StageStats());
+    }
+
+    // try (PipelineMetrics.Span s = metrics.start(Stage.SAVE)) { ... }
+    public Span start(Stage stage) {
+        return new Span(this, stage);
+    }
+
+    public void record(Stage stage, long nanos) {
+        stages.get(stage).add(nanos);
+    }
+
+    public StageStats get(Stage stage) {
+        return stages.get(stage);
+    }
+
+    // Страница разобрана (вызывается на каждую — после первой это одно чтение)
+    public void pageProcessed() {
+        if (firstPageAt.get() == 0) firstPageAt.compareAndSet(0, System.currentTimeMillis());
+    }
+
+    // Время до первой разобранной страницы — в нем вся цена холодного старта (классы, кеш шрифтов PDFBox)
+    public long getFirstPageAt() {
+        return firstPageAt.get();
+    }
+
+    // Сводка по этапам, у которых были замеры: {"LOAD":{"count":..,"totalMillis":..,...},...}
+    public Json toJson() {
+        Json json = Json.object();
+        for (Map.Entry<Stage, StageStats> e : stages.entrySet()) {
+            StageStats s = e.getValue();
+            if (s.getCount() == 0) continue;
+            json.put(e.getKey().name(), Json.object()
+                    .put("count", s.getCount())
+                    .put("totalMillis", millis(s.getTotalNanos()))
+                    .put("meanMillis", millis(s.getTotalNanos() / s.getCount()))
+                    .put("p50Millis", millis(s.percentileNanos(0.50)))
+                    .put("p95Millis", millis(s.percentileNanos(0.95)))
+                    .put("p99Millis", millis(s.percentileNanos(0.99)))
+                    .put("maxMillis", millis(s.getMaxNanos())));
+        }
+        return json;
+    }
+
+    // Короткая таблица для окна: этапы по убыванию суммарного времени
+    public String toText() {
+        StringBuilder out = new StringBuilder();
+        stages.entrySet().stream()
+                .filter(e -> e.getValue().getCount() > 0)
+                .sorted((a, b) -> Long.compare(b.getValue().getTotalNanos(), a.getValue().getTotalNanos()))
+                .forEach(e -> {
+                    StageStats s = e.getValue();
+                    out.append(String.format("%-16s %8.0f ms  (x%d, p95 %.1f ms)%n", e.getKey(),
+                            millis(s.getTotalNanos()), s.getCount(), millis(s.percentileNanos(0.95))));
+                });
+        return out.toString();
+    }
+
+    private static double millis(long nanos) {
+        return Math.round(nanos / 10_000.0) / 100.0;
+    }
+
+    // Счетчики одного этапа
+    public static class StageStats {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+        void add(long nanos) {
+            count.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulate(nanos);
+            long micros = Math.max(1, nanos / 1000);
+            int bucket = Math.min(BUCKETS - 1, 63 - Long.numberOfLeadingZeros(micros));
+            buckets.incrementAndGet(bucket);
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public long getTotalNanos() {
+            return totalNanos.sum();
+        }
+
+        public long getMaxNanos() {
+            return maxNanos.get();
+        }
+
+        // Верхняя граница корзины, в которую попадает перцентиль (точность — в пределах x2)
+        public long percentileNanos(double p) {
+            long total = getCount();
+            if (total == 0) return 0;
+            long rank = (long) Math.ceil(p * total);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets.get(i);
+                if (seen >= rank) return Math.min(getMaxNanos(), (2L << i) * 1000);
+            }
+            return getMaxNanos();
+        }
+    }
+
+    // Один замер этапа; закрытие записывает время в гистограмму и событие в JFR
+    public static class Span implements AutoCloseable {
+        private final PipelineMetrics metrics;
+        private final Stage stage;
+        private final StageEvent event = new StageEvent();
+        private final long start = System.nanoTime();
+
+        private Span(PipelineMetrics metrics, Stage stage) {
+            this.metrics = metrics;
+            this.stage = stage;
+            event.begin();
+        }
+
+        @Override
+        public void close() {
+            metrics.record(stage, System.nanoTime() - start);
+            event.end();
+            if (event.shouldCommit()) {
+                event.stage = stage.name();
+                event.commit();
+            }
+        }
+    }
+
+    @Name("org.example.PipelineStage")
+    @Label("Pipeline Stage")
+    @Category("Manga Cleaner")
+    @Description("One stage of cleaning a PDF or EPUB")
+    @StackTrace(false)
+    static class StageEvent extends Event {
+        @Label("Stage")
+        String stage;
+    }
+
+    @Name("org.example.FileProcessed")
+    @Label("File Processed")
+    @Category("Manga Cleaner")
+    @Description("Whole processing of one input file; stage events on the same thread fall inside it")
+    @StackTrace(false)
+    static class FileEvent extends Event {
+        @Label("File")
+        String file;
+
+        @Label("Pages")
+        int pages;
+
+        @Label("Removed Pages")
+        int removedPages;
+
+        @Label("Bytes In")
+        @DataAmount
+        long bytesIn;
+
+        @Label("Bytes Out")
+        @DataAmount
+        long bytesOut;
+
+        @Label("Failed")
+        boolean failed;
+    }
+}
@@ -0,0 +1,217 @@
+package org.example;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+// Журнал уже обработанных файлов в папке результатов (.manga-cleaner-manifest).
+// Повторный запуск по той же библиотеке пропускает тома, у которых не изменились
+// ни исходник, ни настройки, ни сам результат: проверка — stat, а хеш считается только если stat не совпал.
+public class ProcessingManifest {
+
+    // Меняем, когда меняется логика очистки/ресайза: старые записи перестают совпадать
+    public static final String TOOL_VERSION = "5.2";
+
+    static final String FILE_NAME = ".manga-cleaner-manifest";
+    private static final String HEADER = "# manga-cleaner manifest v1";
+    private static final int HASH_BUFFER = 1 << 20;
+
+    // Что было на входе и что получилось на выходе при прошлой обработке
+    static final class Record {
+        final String input;
+        final long inputSize;
+        final long inputModified;
+        final String inputHash;
+        final String settings;
+        final CropMode cropMode;
+        final String output;
+        final long outputSize;
+        final long outputModified;
+        final String outputHash;
+
+        Record(String input, long inputSize, long inputModified, String inputHash, String settings,
+               CropMode cropMode, String output, long outputSize, long outputModified, String outputHash) {
+            this.input = input;
+            this.inputSize = inputSize;
+            this.inputModified = inputModified;
+            this.inputHash = inputHash;
+            this.settings = settings;
+            this.cropMode = cropMode;
+            this.output = output;
+            this.outputSize = outputSize;
+            this.outputModified = outputModified;
+            this.outputHash = outputHash;
+        }
+    }
+
+    private final Path file;
+    private final Map<String, Record> records = new LinkedHashMap<>();
+
+    private ProcessingManifest(Path file) {
+        this.file = file;
+    }
+
+    // Читает журнал из папки результатов; битые строки просто пропускаются (файл будет обработан заново)
+    public static ProcessingManifest load(File outputDir) {
+        ProcessingManifest manifest = new ProcessingManifest(new File(outputDir, FILE_NAME).toPath());
+        if (!Files.isRegularFile(manifest.file)) return manifest;
+        try {
+            for (String line : Files.readAllLines(manifest.file, StandardCharsets.UTF_8)) {
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                Record r = parse(line);
+                if (r != null) manifest.records.put(r.input, r);
+            }
+        } catch (IOException e) {
+            System.err.println("Не удалось прочитать " + manifest.file + ": " + e.getMessage());
+        }
+        return manifest;
+    }
+
+    // Ключ настроек, от которых зависит результат (кроме режима ресайза — он хранится отдельно).
+    // device — профиль читалки или null (без него ключ тот же, что и до появления профилей);
+    // rasterWatermarks — искать ли водяной знак в картинках (по умолчанию да, выключение меняет ключ);
+    // minConfidence — порог автовыбора ресайза; junkIndex — файл индекса мусорных страниц или null (выключен).
+    // Настройки по умолчанию ключ не меняют, чтобы старый журнал не считался устаревшим целиком.
+    // Содержимое индекса в ключ не входит: индекс пополняется каждым пакетом, и тогда пересчитывалось бы все
+    public static String settingsKey(List<String> patterns, DeviceProfile device, boolean rasterWatermarks,
+                                     double minConfidence, File junkIndex) {
+        CRC32C crc = new CRC32C();
+        crc.update(TOOL_VERSION.getBytes(StandardCharsets.UTF_8));
+        for (String p : patterns) {
+            crc.update(0);
+            crc.update(p.toLowerCase().getBytes(StandardCharsets.UTF_8));
+        }
+        if (device != null) {
+            crc.update(1);
+            crc.update(device.settingsKey().getBytes(StandardCharsets.UTF_8));
+        }
+        if (!rasterWatermarks) crc.update(2);
+        if (minConfidence != BatchOptions.DEFAULT_AUTO_CROP_MIN_CONFIDENCE) {
+            crc.update(3);
+            crc.update(Double.toString(minConfidence).getBytes(StandardCharsets.UTF_8));
+        }
+        if (junkIndex == null) {
+            crc.update(4);
+        } else if (!junkIndex.getAbsoluteFile().equals(JunkPageIndex.defaultFile().getAbsoluteFile())) {
+            crc.update(5);
+            crc.update(junkIndex.getAbsolutePath().getBytes(StandardCharsets.UTF_8));
+        }
+        return Long.toHexString(crc.getValue());
+    }
+
+    // Запись для входного файла, если с прошлого раза ничего не поменялось; иначе null.
+    // cropMode — режим текущего пакета (null — еще не выбран, подойдет любой)
+    synchronized Record findUnchanged(File input, String settings, CropMode cropMode) {
+        Record r = records.get(key(input));
+        if (r == null || !r.settings.equals(settings)) return null;
+        if (cropMode != null && r.cropMode != null && r.cropMode != cropMode) return null;
+
+        try {
+            if (!sameContent(input, r.inputSize, r.inputModified, r.inputHash)) return null;
+            File output = new File(r.output);
+            if (!sameContent(output, r.outputSize, r.outputModified, r.outputHash)) return null;
+        } catch (IOException e) {
+            return null;
+        }
+        return r;
+    }
+
+    // Запоминает успешную обработку и сразу сохраняет журнал (прерванный пакет не теряет сделанное)
+    void put(File input, File output, String settings, CropMode cropMode) throws IOException {
+        Record r = new Record(key(input), input.length(), input.lastModified(), hash(input), settings, cropMode,
+                output.getAbsolutePath(), output.length(), output.lastModified(), hash(output));
+        synchronized (this) {
+            records.put(r.input, r);
+            save();
+        }
+    }
+
+    // Быстрый хеш содержимого: CRC32C (аппаратный на x86/ARM) вместе с размером файла
+    static String hash(File file) throws IOException {
+        CRC32C crc = new CRC32C();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(HASH_BUFFER);
+        try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            while (ch.read(buffer) >= 0) {
+                buffer.flip();
+                crc.update(buffer);
+                buffer.clear();
+            }
+        }
+        return Long.toHexString(crc.getValue());
+    }
+
+    private static boolean sameContent(File f, long size, long modified, String hash) throws IOException {
+        if (!f.isFile() || f.length() != size) return false;
+        // Совпали размер и время изменения — файл не трогали, хеш не пересчитываем
+        if (f.lastModified() == modified) return true;
+        return hash(f).equals(hash);
+    }
+
+    private static String key(File input) {
+        return input.getAbsolutePath();
+    }
+
+    private void save() throws IOException {
+        Path tmp = file.resolveSibling(FILE_NAME + ".tmp");
+        try (BufferedWriter out = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            out.write(HEADER);
+            out.newLine();
+            for (Record r : records.values()) {
+                out.write(String.join("\t",
+                        Long.toString(r.inputSize), Long.toString(r.inputModified), r.inputHash,
+                        r.settings, r.cropMode != null ? r.cropMode.name() : "-",
+                        Long.toString(r.outputSize), Long.toString(r.outputModified), r.outputHash,
+                        escape(r.input), escape(r.output)));
+                out.newLine();
+            }
+        }
+        try {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static Record parse(String line) {
+        String[] f = line.split("\t", -1);
+        if (f.length != 10) return null;
+        try {
+            return new Record(unescape(f[8]), Long.parseLong(f[0]), Long.parseLong(f[1]), f[2], f[3],
+                    f[4].equals("-") ? null : CropMode.valueOf(f[4]),
+                    unescape(f[9]), Long.parseLong(f[5]), Long.parseLong(f[6]), f[7]);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    // Пути с табуляцией или переводом строки в имени не должны ломать строку журнала
+    private static String escape(String s) {
+        return s.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n");
+    }
+
+    private static String unescape(String s) {
+        StringBuilder out = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '\\' && i + 1 < s.length()) {
+                char n = s.charAt(++i);
+                out.append(n == 't' ? '\t' : n == 'n' ? '\n' : n);
+            } else {
+                out.append(c);
+            }
+        }
+        return out.toString();
+    }
+}
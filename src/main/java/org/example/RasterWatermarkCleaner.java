@@ -0,0 +1,125 @@
+package org.example;
+
+import org.apache.pdfbox.contentstream.PDFStreamEngine;
+import org.apache.pdfbox.contentstream.operator.Operator;
+import org.apache.pdfbox.contentstream.operator.OperatorProcessor;
+import org.apache.pdfbox.contentstream.operator.state.Concatenate;
+import org.apache.pdfbox.contentstream.operator.state.Restore;
+import org.apache.pdfbox.contentstream.operator.state.Save;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.graphics.form.PDFormXObject;
+import org.apache.pdfbox.util.Matrix;
+
+import java.awt.Color;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// Водяной знак, впечатанный в пиксели главной картинки страницы (сканы без текстового слоя).
+// Поиск — RasterWatermarkDetector по миниатюрам, параллельно по картинкам тома (MangaResizer.findRasterWatermarks);
+// замазка — белые прямоугольники, дописанные в конец страницы, как и для текстовых находок.
+// Прямоугольники рисуются в пространстве самой картинки (ее матрица на странице), поэтому ложатся точно на надпись
+public class RasterWatermarkCleaner {
+
+    // Защита от бесконечной рекурсии в кривых PDF
+    private static final int MAX_FORM_DEPTH = 8;
+
+    private final MangaResizer resizer;
+    private final RasterWatermarkDetector detector;
+
+    public RasterWatermarkCleaner(MangaResizer resizer) {
+        this(resizer, new RasterWatermarkDetector(RasterWatermarkDetector.DEFAULT_STAMPS));
+    }
+
+    // resizer — тот же, что потом ресайзит документ: найденное он рисует и в новой раскладке
+    public RasterWatermarkCleaner(MangaResizer resizer, RasterWatermarkDetector detector) {
+        this.resizer = resizer;
+        this.detector = detector;
+    }
+
+    // Ищет и замазывает; возвращает число страниц, на которых что-то замазано
+    public int clean(PDDocument doc) throws IOException {
+        Map<COSStream, float[][]> covers = resizer.findRasterWatermarks(doc, detector);
+        if (covers.isEmpty()) return 0;
+
+        int pages = 0;
+        for (PDPage page : doc.getPages()) {
+            MangaResizer.MainImage img = resizer.mainImage(doc, page);
+            float[][] rects = (img != null) ? covers.get(img.stream) : null;
+            if (rects == null) continue;
+
+            List<Matrix> placements = new PlacementFinder(img.stream).find(page);
+            if (placements.isEmpty()) continue;
+
+            try (PDPageContentStream cs = new PDPageContentStream(doc, page, PDPageContentStream.AppendMode.APPEND, true, true)) {
+                cs.setNonStrokingColor(Color.WHITE);
+                for (Matrix ctm : placements) {
+                    cs.saveGraphicsState();
+                    cs.transform(ctm);
+                    // Картинка — единичный квадрат, ось Y снизу вверх; прямоугольники — от левого верхнего угла
+                    for (float[] r : rects) cs.addRect(r[0], 1 - r[3], r[2] - r[0], r[3] - r[1]);
+                    cs.fill();
+                    cs.restoreGraphicsState();
+                }
+            }
+            IncrementalSave.markPageChanged(doc, page.getCOSObject());
+            pages++;
+        }
+        return pages;
+    }
+
+    // Где на странице нарисована картинка: матрица (CTM) на каждом ее "Do", включая вложенные Form XObject.
+    // Из операторов нужны только q/Q/cm и Do — текст и графика не разбираются
+    private static final class PlacementFinder extends PDFStreamEngine {
+        private final COSStream target;
+        private final List<Matrix> found = new ArrayList<>();
+        private int depth;
+
+        PlacementFinder(COSStream target) {
+            this.target = target;
+            addOperator(new Save());
+            addOperator(new Restore());
+            addOperator(new Concatenate());
+            addOperator(new OperatorProcessor() {
+                @Override
+                public void process(Operator operator, List<COSBase> operands) throws IOException {
+                    if (operands.isEmpty() || !(operands.get(0) instanceof COSName)) return;
+                    PDResources res = getResources();
+                    COSDictionary xObjects = (res != null) ? res.getCOSObject().getCOSDictionary(COSName.XOBJECT) : null;
+                    if (xObjects == null) return;
+
+                    COSBase value = xObjects.getDictionaryObject((COSName) operands.get(0));
+                    if (value == target) {
+                        found.add(getGraphicsState().getCurrentTransformationMatrix().clone());
+                    } else if (value instanceof COSStream && depth < MAX_FORM_DEPTH
+                            && COSName.FORM.equals(((COSStream) value).getCOSName(COSName.SUBTYPE))) {
+                        depth++;
+                        try {
+                            showForm(new PDFormXObject((COSStream) value));
+                        } finally {
+                            depth--;
+                        }
+                    }
+                }
+
+                @Override
+                public String getName() {
+                    return "Do";
+                }
+            });
+        }
+
+        List<Matrix> find(PDPage page) throws IOException {
+            processPage(page);
+            return found;
+        }
+    }
+}
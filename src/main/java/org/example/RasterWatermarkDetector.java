@@ -0,0 +1,441 @@
+package org.example;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+// Поиск надписи водяного знака, впечатанной в пиксели скана (текстового слоя нет — WatermarkLocator ее не видит).
+// Нормированная взаимная корреляция с отрисованной надписью, только в полосах сверху и снизу миниатюры.
+// Среднее и дисперсия окна берутся из интегральных изображений за O(1), однотонные окна пропускаются сразу.
+// Два уровня: грубо в 1/4 разрешения (слово — пятно, промах в масштабе прощается) по редкой сетке масштабов,
+// затем уточнение лучших кандидатов в 1/2 разрешения по частой сетке вокруг найденного масштаба
+public final class RasterWatermarkDetector {
+
+    // Как надпись обычно выглядит на скане (регистр важен для формы букв)
+    public static final List<String> DEFAULT_STAMPS = List.of("OceanofPDF.com");
+
+    // Ширина миниатюры, на которой ищем (картинка декодируется с подвыборкой примерно до нее)
+    public static final int THUMBNAIL_WIDTH = 600;
+
+    // Доля высоты сверху и снизу, где ищем
+    private static final double BAND = 0.12;
+
+    // Высота букв надписи на миниатюре: от MIN до MAX с шагом SCALE_STEP (уточнение)
+    private static final double MIN_TEXT_HEIGHT = 7;
+    private static final double MAX_TEXT_HEIGHT = 22;
+    private static final double SCALE_STEP = 1.04;
+
+    // Грубый поиск — по каждому COARSE_EVERY-му масштабу (остальные покрывает уточнение, REFINE_SCALES в обе стороны)
+    // и через COARSE_STRIDE пикселей по горизонтали (пятно слова шире, промах добирает REFINE_RADIUS)
+    private static final int COARSE_EVERY = 4;
+    private static final int COARSE_STRIDE = 2;
+
+    private static final double COARSE_THRESHOLD = 0.45;
+    private static final double THRESHOLD = 0.6;
+
+    // Окна с разбросом яркости меньше этого (СКО) — однотонные, надписи там нет
+    private static final double MIN_STDDEV = 10;
+
+    // Сколько соседних масштабов (в обе стороны) пробовать при уточнении
+    private static final int REFINE_SCALES = 2;
+
+    // Ниже этого хоть у одной части — совпадение не засчитывается
+    private static final double PART_THRESHOLD = 0.4;
+
+    // Насколько часть надписи может сдвинуться по горизонтали относительно предыдущей
+    private static final int PART_SLACK = 2;
+
+    // Части надписи — примерно по столько высот букв в ширину
+    private static final int PART_ASPECT = 3;
+
+    // Сколько лучших грубых кандидатов на полосу уточнять
+    private static final int MAX_CANDIDATES = 24;
+
+    // На сколько пикселей (1/2 разрешения) вокруг грубой позиции искать точную
+    private static final int REFINE_RADIUS = 3;
+
+    // fine — в 1/2 разрешения миниатюры, coarse — в 1/4; каждый масштаб обычным и жирным шрифтом
+    // (жирный шире — обычный шаблон того же роста с ним уже не совпадает)
+    private final List<Template> fine = new ArrayList<>();
+    private final List<Template> coarse = new ArrayList<>();
+
+    public RasterWatermarkDetector(List<String> stamps) {
+        for (String stamp : stamps) {
+            int scale = 0;
+            for (double h = MIN_TEXT_HEIGHT; h <= MAX_TEXT_HEIGHT; h *= SCALE_STEP, scale++) {
+                for (int style : new int[]{Font.PLAIN, Font.BOLD}) {
+                    Template full = Template.render(stamp, h, style);
+                    Template f = full == null || full.width >= THUMBNAIL_WIDTH ? null : full.half();
+                    if (f == null) continue;
+                    f.scale = scale;
+                    f.split();
+                    fine.add(f);
+                    Template c = (scale % COARSE_EVERY == 0) ? f.half() : null;
+                    if (c != null) {
+                        c.scale = scale;
+                        coarse.add(c);
+                    }
+                }
+            }
+        }
+    }
+
+    // Найденные надписи в долях картинки {слева, сверху, справа, снизу} (отсчет от левого верхнего угла)
+    public List<float[]> find(BufferedImage thumbnail) {
+        List<float[]> found = new ArrayList<>();
+        MarginDetector.Pixels px = MarginDetector.Pixels.of(thumbnail);
+        int bandH = (int) Math.ceil(px.height * BAND);
+        if (fine.isEmpty() || px.width < 32 || bandH < 16) return found;
+
+        searchBand(px, 0, bandH, found);
+        searchBand(px, px.height - bandH, px.height, found);
+        return found;
+    }
+
+    private void searchBand(MarginDetector.Pixels px, int y0, int y1, List<float[]> found) {
+        int[] band = new int[px.width * (y1 - y0)];
+        px.luminance(y0, y1, band);
+        Level half = Level.halve(band, px.width, y1 - y0);
+        Level quarter = Level.halve(half.gray, half.width, half.height);
+
+        // Грубый поиск: все позиции всех грубых масштабов выше порога
+        List<double[]> candidates = new ArrayList<>(); // {ncc, x, y, индекс coarse}, позиция в 1/2 разрешения
+        for (int t = 0; t < coarse.size(); t++) {
+            Template c = coarse.get(t);
+            for (int y = 0; y + c.height <= quarter.height; y++) {
+                for (int x = 0; x + c.width <= quarter.width; x += COARSE_STRIDE) {
+                    double ncc = quarter.ncc(x, y, c);
+                    if (ncc >= COARSE_THRESHOLD) candidates.add(new double[]{ncc, 2 * x, 2 * y, t});
+                }
+            }
+        }
+        if (candidates.isEmpty()) return;
+        candidates.sort((a, b) -> Double.compare(b[0], a[0]));
+
+        // Уточнение в 1/2 разрешения по соседним масштабам; перекрывающиеся находки схлопываются в лучшую
+        List<int[]> accepted = new ArrayList<>(); // {x, y, ширина, высота} в 1/2 разрешения полосы
+        List<int[]> tried = new ArrayList<>();
+        for (double[] cand : candidates) {
+            if (tried.size() >= MAX_CANDIDATES) break;
+            Template ct = coarse.get((int) cand[3]);
+            int cx = (int) cand[1];
+            int cy = (int) cand[2];
+            // Кандидат рядом с уже уточненным пропускается, только если его масштаб тоже уже перебран:
+            // короткий шаблон находит кусок крупной надписи, и настоящий масштаб там же не должен потеряться
+            if (overlaps(tried, cx, cy, 2 * ct.width, 2 * ct.height, ct.scale)) continue;
+            tried.add(new int[]{cx, cy, 2 * ct.width, 2 * ct.height, ct.scale});
+
+            // Надпись по частям, каждая следующая может сдвинуться на пару пикселей — так прощаются
+            // другие межбуквенные интервалы, на которых целое слово теряет корреляцию
+            int[] best = null;
+            double bestScore = -1;
+            for (Template f : fine) {
+                if (Math.abs(f.scale - ct.scale) > REFINE_SCALES || !f.stamp.equals(ct.stamp)) continue;
+                int[] box = new int[4];
+                double score = matchParts(half, f, cx, cy, box);
+                if (score > bestScore) {
+                    bestScore = score;
+                    best = box;
+                }
+            }
+            if (bestScore >= THRESHOLD && !overlaps(accepted, best[0], best[1], best[2], best[3])) {
+                accepted.add(best);
+            }
+        }
+
+        double w = px.width;
+        double h = px.height;
+        for (int[] r : accepted) {
+            // Обратно в пиксели миниатюры, с запасом вокруг букв (сглаживание, тень надписи): по высоте — полроста
+            // надписи, по ширине — целая буква (надпись между шагами масштаба бывает чуть длиннее шаблона)
+            int padY = Math.max(2, r[3]);
+            int padX = 2 * padY;
+            found.add(new float[]{
+                    (float) (Math.max(0, 2 * r[0] - padX) / w),
+                    (float) (Math.max(0, y0 + 2 * r[1] - padY) / h),
+                    (float) (Math.min(w, 2 * (r[0] + r[2]) + padX) / w),
+                    (float) (Math.min(h, y0 + 2 * (r[1] + r[3]) + padY) / h)});
+        }
+    }
+
+    // Средняя корреляция частей f около (cx, cy); box — их общий прямоугольник {x, y, ширина, высота}.
+    // Первая часть ищется в окне REFINE_RADIUS, каждая следующая — от найденной предыдущей: на той же строке
+    // (±1) и с тем же интервалом (±PART_SLACK). Если хоть одна часть не нашлась (ниже PART_THRESHOLD): -1
+    private static double matchParts(Level level, Template f, int cx, int cy, int[] box) {
+        double total = 0;
+        int x0 = Integer.MAX_VALUE, y0 = Integer.MAX_VALUE, x1 = 0, y1 = 0;
+        int prevX = cx, prevY = cy, prevOffset = 0;
+        int radiusX = REFINE_RADIUS, radiusY = REFINE_RADIUS;
+        for (Template part : f.parts) {
+            int px = prevX + part.offset - prevOffset;
+            double best = -1;
+            int bx = 0, by = 0;
+            int yFrom = Math.max(0, prevY - radiusY);
+            int yTo = Math.min(level.height - part.height, prevY + radiusY);
+            int xFrom = Math.max(0, px - radiusX);
+            int xTo = Math.min(level.width - part.width, px + radiusX);
+            for (int y = yFrom; y <= yTo; y++) {
+                for (int x = xFrom; x <= xTo; x++) {
+                    double ncc = level.ncc(x, y, part);
+                    if (ncc > best) {
+                        best = ncc;
+                        bx = x;
+                        by = y;
+                    }
+                }
+            }
+            if (best < PART_THRESHOLD) return -1;
+            total += best;
+            x0 = Math.min(x0, bx);
+            y0 = Math.min(y0, by);
+            x1 = Math.max(x1, bx + part.width);
+            y1 = Math.max(y1, by + part.height);
+            prevX = bx;
+            prevY = by;
+            prevOffset = part.offset;
+            radiusX = PART_SLACK;
+            radiusY = 1;
+        }
+        box[0] = x0;
+        box[1] = y0;
+        box[2] = x1 - x0;
+        box[3] = y1 - y0;
+        return total / f.parts.size();
+    }
+
+    private static boolean overlaps(List<int[]> rects, int x, int y, int w, int h) {
+        for (int[] r : rects) {
+            if (x < r[0] + r[2] && r[0] < x + w && y < r[1] + r[3] && r[1] < y + h) return true;
+        }
+        return false;
+    }
+
+    // То же среди прямоугольников {x, y, ширина, высота, масштаб} не дальше REFINE_SCALES от scale
+    private static boolean overlaps(List<int[]> rects, int x, int y, int w, int h, int scale) {
+        for (int[] r : rects) {
+            if (Math.abs(r[4] - scale) <= REFINE_SCALES
+                    && x < r[0] + r[2] && r[0] < x + w && y < r[1] + r[3] && r[1] < y + h) return true;
+        }
+        return false;
+    }
+
+    // Яркость полосы в одном разрешении и ее интегральные изображения (суммы и суммы квадратов)
+    private static final class Level {
+        final int[] gray;
+        final int width;
+        final int height;
+        final long[] sum;
+        final long[] sumSq;
+
+        Level(int[] gray, int width, int height) {
+            this.gray = gray;
+            this.width = width;
+            this.height = height;
+            int stride = width + 1;
+            sum = new long[stride * (height + 1)];
+            sumSq = new long[stride * (height + 1)];
+            for (int y = 0; y < height; y++) {
+                long rowSum = 0, rowSq = 0;
+                for (int x = 0; x < width; x++) {
+                    int v = gray[y * width + x];
+                    rowSum += v;
+                    rowSq += (long) v * v;
+                    sum[(y + 1) * stride + x + 1] = sum[y * stride + x + 1] + rowSum;
+                    sumSq[(y + 1) * stride + x + 1] = sumSq[y * stride + x + 1] + rowSq;
+                }
+            }
+        }
+
+        // Вдвое меньше, усреднением 2x2
+        static Level halve(int[] gray, int width, int height) {
+            int w = width / 2;
+            int h = height / 2;
+            int[] out = new int[w * h];
+            for (int y = 0; y < h; y++) {
+                int src = 2 * y * width;
+                for (int x = 0; x < w; x++, src += 2) {
+                    out[y * w + x] = (gray[src] + gray[src + 1] + gray[src + width] + gray[src + width + 1] + 2) >> 2;
+                }
+            }
+            return new Level(out, w, h);
+        }
+
+        // Корреляция окна (x, y) с шаблоном, -1..1; шаблон хранится с вычтенным средним,
+        // поэтому среднее окна в числителе не нужно
+        double ncc(int x, int y, Template t) {
+            int stride = width + 1;
+            int a = y * stride + x;
+            int b = a + t.width;
+            int c = (y + t.height) * stride + x;
+            int d = c + t.width;
+            long s = sum[d] - sum[b] - sum[c] + sum[a];
+            long s2 = sumSq[d] - sumSq[b] - sumSq[c] + sumSq[a];
+            int n = t.width * t.height;
+            double variance = s2 - (double) s * s / n;
+            if (variance < MIN_STDDEV * MIN_STDDEV * n) return -1;
+
+            // В int: 255 * 1020 на пиксель, шаблоны не больше ~1200 пикселей — переполнения нет, а цикл векторизуется
+            int dot = 0;
+            int[] tz = t.zeroMean;
+            for (int ty = 0, k = 0; ty < t.height; ty++, k += t.width) {
+                int row = (y + ty) * width + x;
+                for (int tx = 0; tx < t.width; tx++) {
+                    dot += gray[row + tx] * tz[k + tx];
+                }
+            }
+            return dot / Math.sqrt(variance * t.normSq);
+        }
+    }
+
+    // Надпись, отрисованная черным по белому и обрезанная по буквам; хранится и со сдвигом на среднее
+    private static final class Template {
+        final String stamp;
+        final int width;
+        final int height;
+        final int[] pixels;
+        final int[] zeroMean;
+        final double normSq;
+        // Для шаблонов уточнения: части надписи, разрезанной по просветам между буквами
+        List<Template> parts = List.of();
+        // Для части: сдвиг от левого края целой надписи
+        int offset;
+        // Номер масштаба (шаг SCALE_STEP от MIN_TEXT_HEIGHT)
+        int scale;
+
+        private Template(String stamp, int width, int height, int[] pixels, int[] zeroMean, double normSq) {
+            this.stamp = stamp;
+            this.width = width;
+            this.height = height;
+            this.pixels = pixels;
+            this.zeroMean = zeroMean;
+            this.normSq = normSq;
+        }
+
+        // Шрифт (style — Font.PLAIN/BOLD) подбирается так, чтобы высота букв была textHeight пикселей
+        static Template render(String text, double textHeight, int style) {
+            int[] box = inkBox(draw(text, 64f, style));
+            if (box == null) return null;
+            BufferedImage image = draw(text, (float) (64 * textHeight / box[3]), style);
+            box = inkBox(image);
+            if (box == null || box[2] < 2 || box[3] < 2) return null;
+
+            int w = box[2];
+            int h = box[3];
+            int[] gray = new int[w * h];
+            for (int y = 0; y < h; y++) {
+                for (int x = 0; x < w; x++) gray[y * w + x] = image.getRaster().getSample(box[0] + x, box[1] + y, 0);
+            }
+            return of(text, gray, w, h);
+        }
+
+        // Режет надпись на части шириной около PART_ASPECT высот — по самым светлым столбцам рядом с разрезом
+        void split() {
+            int n = Math.max(1, (int) Math.round((double) width / (PART_ASPECT * height)));
+            List<Template> out = new ArrayList<>();
+            int from = 0;
+            for (int k = 1; k <= n; k++) {
+                int to = width;
+                if (k < n) {
+                    int ideal = width * k / n;
+                    long lightest = -1;
+                    for (int x = Math.max(from + 2, ideal - height / 2); x <= Math.min(width - 2, ideal + height / 2); x++) {
+                        long ink = 0;
+                        for (int y = 0; y < height; y++) ink += 255 - pixels[y * width + x];
+                        if (lightest < 0 || ink < lightest) {
+                            lightest = ink;
+                            to = x;
+                        }
+                    }
+                }
+                Template part = crop(from, to);
+                if (part == null) {
+                    parts = List.of(this); // слишком мелко для частей — целиком
+                    return;
+                }
+                out.add(part);
+                from = to;
+            }
+            parts = out;
+        }
+
+        private Template crop(int x0, int x1) {
+            int w = x1 - x0;
+            if (w < 2) return null;
+            int[] gray = new int[w * height];
+            for (int y = 0; y < height; y++) System.arraycopy(pixels, y * width + x0, gray, y * w, w);
+            Template part = of(stamp, gray, w, height);
+            if (part != null) part.offset = x0;
+            return part;
+        }
+
+        // Тот же шаблон вдвое меньше — усреднением 2x2, как и полоса картинки
+        Template half() {
+            int w = width / 2;
+            int h = height / 2;
+            if (w < 2 || h < 2) return null;
+            int[] gray = new int[w * h];
+            for (int y = 0; y < h; y++) {
+                for (int x = 0; x < w; x++) {
+                    int src = 2 * y * width + 2 * x;
+                    gray[y * w + x] = (pixels[src] + pixels[src + 1] + pixels[src + width] + pixels[src + width + 1] + 2) >> 2;
+                }
+            }
+            return of(stamp, gray, w, h);
+        }
+
+        private static Template of(String stamp, int[] gray, int w, int h) {
+            long total = 0;
+            for (int v : gray) total += v;
+            // Среднее в 4 раза точнее целого: сумма шаблона остается около нуля
+            int mean4 = (int) Math.round(4.0 * total / gray.length);
+            int[] zeroMean = new int[gray.length];
+            double normSq = 0;
+            for (int i = 0; i < gray.length; i++) {
+                zeroMean[i] = 4 * gray[i] - mean4;
+                normSq += (double) zeroMean[i] * zeroMean[i];
+            }
+            if (normSq == 0) return null;
+            return new Template(stamp, w, h, gray, zeroMean, normSq);
+        }
+
+        private static BufferedImage draw(String text, float size, int style) {
+            Font font = new Font(Font.SANS_SERIF, style, 1).deriveFont(size);
+            int w = (int) Math.ceil(size * text.length()) + 8;
+            int h = (int) Math.ceil(size * 2) + 8;
+            BufferedImage image = new BufferedImage(w, h, BufferedImage.TYPE_BYTE_GRAY);
+            Graphics2D g = image.createGraphics();
+            try {
+                g.setColor(Color.WHITE);
+                g.fillRect(0, 0, w, h);
+                g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+                g.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS, RenderingHints.VALUE_FRACTIONALMETRICS_ON);
+                g.setColor(Color.BLACK);
+                g.setFont(font);
+                g.drawString(text, 4, 4 + g.getFontMetrics().getAscent());
+            } finally {
+                g.dispose();
+            }
+            return image;
+        }
+
+        // {x, y, ширина, высота} по пикселям темнее фона; null — пусто
+        private static int[] inkBox(BufferedImage image) {
+            int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, maxX = -1, maxY = -1;
+            for (int y = 0; y < image.getHeight(); y++) {
+                for (int x = 0; x < image.getWidth(); x++) {
+                    if (image.getRaster().getSample(x, y, 0) < 160) {
+                        if (x < minX) minX = x;
+                        if (x > maxX) maxX = x;
+                        if (y < minY) minY = y;
+                        if (y > maxY) maxY = y;
+                    }
+                }
+            }
+            return (maxX < 0) ? null : new int[]{minX, minY, maxX - minX + 1, maxY - minY + 1};
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package org.example;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Периодически замеряет память процесса (RSS из /proc/self/status, вне Linux — занятую кучу)
+// и запоминает пик для каждого файла, который в этот момент в работе
+public class RssSampler implements AutoCloseable {
+
+    private static final Path PROC_STATUS = Paths.get("/proc/self/status");
+    private static final long SAMPLE_INTERVAL_MS = 100;
+
+    private final ScheduledExecutorService timer;
+    private final Map<Object, AtomicLong> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong overallPeak = new AtomicLong();
+
+    public RssSampler() {
+        timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "rss-sampler");
+            t.setDaemon(true);
+            return t;
+        });
+        timer.scheduleAtFixedRate(this::sample, 0, SAMPLE_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    // Начинаем следить за пиком для ключа (обычно входной файл)
+    public void begin(Object key) {
+        inFlight.put(key, new AtomicLong(currentRss()));
+    }
+
+    // Возвращает пик памяти процесса, пока ключ был в работе
+    public long end(Object key) {
+        AtomicLong peak = inFlight.remove(key);
+        if (peak == null) return 0;
+        peak.accumulateAndGet(currentRss(), Math::max);
+        return peak.get();
+    }
+
+    public long getOverallPeak() {
+        return overallPeak.get();
+    }
+
+    private void sample() {
+        long rss = currentRss();
+        overallPeak.accumulateAndGet(rss, Math::max);
+        for (AtomicLong peak : inFlight.values()) {
+            peak.accumulateAndGet(rss, Math::max);
+        }
+    }
+
+    public static long currentRss() {
+        try {
+            List<String> lines = Files.readAllLines(PROC_STATUS, StandardCharsets.US_ASCII);
+            for (String line : lines) {
+                if (line.startsWith("VmRSS:")) {
+                    // "VmRSS:    123456 kB"
+                    String kb = line.substring(6).replace("kB", "").trim();
+                    return Long.parseLong(kb) * 1024;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // Нет /proc (Windows, macOS) — ниже
+        }
+        Runtime rt = Runtime.getRuntime();
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    @Override
+    public void close() {
+        timer.shutdownNow();
+    }
+}
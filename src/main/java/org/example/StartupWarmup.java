@@ -0,0 +1,121 @@
+package org.example;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.font.FontMappers;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.graphics.image.JPEGFactory;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.apache.pdfbox.rendering.PDFRenderer;
+import org.apache.pdfbox.text.PDFTextStripper;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+// Прогрев при старте. Первый файл иначе платит за все сам: PDFTextStripper (поиск водяного знака) и PDFRenderer
+// (превью) на первом же шрифте заставляют PDFBox перебрать системные шрифты — при первом запуске на машине это
+// секунды на построение ~/.pdfbox.cache, потом — чтение кеша. Плюс загрузка классов PDFBox и ImageIO из jar.
+// Фоновый прогрев делает то же самое заранее, пока пользователь выбирает файлы; FontMapper сам синхронизирован,
+// так что файл, пришедший раньше конца прогрева, просто дождется того же кеша, а не начнет второй перебор
+final class StartupWarmup {
+
+    private StartupWarmup() {
+    }
+
+    // Прогрев в фоновом потоке; ошибки не важны — тогда все загрузится при первом файле, как раньше
+    static void startInBackground() {
+        Thread thread = new Thread(() -> {
+            try {
+                fontsAndClasses();
+            } catch (Exception | LinkageError e) {
+                // Прогрев — только оптимизация
+            }
+        }, "pdfbox-warmup");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    // Кеш шрифтов, затем текст и рендер маленького документа в памяти (классы текстового слоя и рендера)
+    static void fontsAndClasses() throws IOException {
+        FontMappers.instance().getFontBoxFont("Helvetica", null);
+        try (PDDocument doc = sampleDocument()) {
+            new PDFTextStripper().getText(doc);
+            new PDFRenderer(doc).renderImage(0, 0.25f);
+        }
+    }
+
+    // Полный прогон пакета (PDF и CBZ) по образцу во временной папке: загружает все классы конвейера.
+    // Это обучающий запуск для архива AppCDS (mvn package -Pappcds, см. pom.xml); возвращает время в мс
+    static long trainingRun() throws Exception {
+        long start = System.currentTimeMillis();
+        Path dir = Files.createTempDirectory("manga-cleaner-warmup");
+        try {
+            File input = dir.resolve("warmup.pdf").toFile();
+            try (PDDocument doc = sampleDocument()) {
+                doc.save(input);
+            }
+            for (OutputFormat format : OutputFormat.values()) {
+                BatchOptions options = new BatchOptions();
+                options.setCropMode(CropMode.AUTO);
+                options.setOutputFormat(format);
+                options.setParallelism(1);
+                options.setSkipUnchanged(false);
+                options.setJunkIndexFile(null);
+                new BatchProcessor(options, null).process(Collections.singletonList(input), dir.toFile(),
+                        new BatchProcessor.Listener() {});
+            }
+        } finally {
+            try (Stream<Path> files = Files.walk(dir)) {
+                files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+        return System.currentTimeMillis() - start;
+    }
+
+    // Образец: страница текста с водяным знаком и страница-скан (JPEG с надписью внизу)
+    private static PDDocument sampleDocument() throws IOException {
+        PDDocument doc = new PDDocument();
+
+        PDPage text = new PDPage(PDRectangle.A5);
+        doc.addPage(text);
+        try (PDPageContentStream cs = new PDPageContentStream(doc, text)) {
+            cs.beginText();
+            cs.setFont(PDType1Font.HELVETICA, 12);
+            cs.newLineAtOffset(40, 500);
+            cs.showText("Chapter 1");
+            cs.newLineAtOffset(0, -440);
+            cs.showText("OceanofPDF.com");
+            cs.endText();
+        }
+
+        BufferedImage scan = new BufferedImage(600, 900, BufferedImage.TYPE_BYTE_GRAY);
+        Graphics2D g = scan.createGraphics();
+        g.setPaint(new GradientPaint(0, 0, Color.WHITE, 600, 900, Color.DARK_GRAY));
+        g.fillRect(0, 0, 600, 900);
+        g.setColor(Color.BLACK);
+        g.setFont(new Font(Font.SANS_SERIF, Font.PLAIN, 18));
+        g.drawString("OceanofPDF.com", 230, 880);
+        g.dispose();
+
+        PDPage image = new PDPage(PDRectangle.A5);
+        doc.addPage(image);
+        PDImageXObject xobject = JPEGFactory.createFromImage(doc, scan, 0.8f);
+        try (PDPageContentStream cs = new PDPageContentStream(doc, image)) {
+            cs.drawImage(xobject, 0, 0, PDRectangle.A5.getWidth(), PDRectangle.A5.getHeight());
+        }
+        return doc;
+    }
+}
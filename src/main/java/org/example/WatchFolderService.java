@@ -0,0 +1,208 @@
+package org.example;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+// Долгоживущий режим "папка входящих": новые PDF/EPUB в папке (и подпапках) чистятся сами, без перетаскивания в окно.
+// Файл берется в работу, когда его размер и время изменения перестали меняться (докачался).
+// Очередь к конвейеру ограничена: если обработка не успевает, наблюдатель ждет на put и не копит работу;
+// события, потерянные за это время (OVERFLOW), покрывает повторный обход папки
+public class WatchFolderService {
+
+    // Столько времени файл не должен меняться, чтобы считаться докачанным
+    private static final long STABLE_MILLIS = 2000;
+    private static final long POLL_MILLIS = 500;
+
+    private final Path inbox;
+    private final File outputDir;
+    private final BatchProcessor processor;
+    private final BatchProcessor.Listener listener;
+    private final BlockingQueue<File> queue;
+    private final int maxBatch;
+
+    // Замечены, но еще пишутся: путь -> последний размер/время и когда они менялись
+    private final Map<Path, Pending> pending = new LinkedHashMap<>();
+    // Отданы в очередь и еще в работе: путь -> "размер|время" на тот момент (повторные MODIFY того же файла не считаются).
+    // Запись убирается, когда пакет с файлом доработал, — иначе за месяцы работы тут копились бы все файлы;
+    // если файл потом снова тронут, его пропустит журнал обработки
+    private final Map<Path, String> queued = new ConcurrentHashMap<>();
+
+    public WatchFolderService(File inbox, File outputDir, BatchOptions options, BatchProcessor.Listener listener) {
+        this.inbox = inbox.toPath().toAbsolutePath().normalize();
+        this.outputDir = outputDir;
+        // Результаты рядом с входящими снова считались бы новыми файлами (*_clean_clean.pdf ...)
+        if (outputDir.toPath().toAbsolutePath().normalize().equals(this.inbox)) {
+            throw new IllegalArgumentException("output directory must differ from the watched folder: " + outputDir);
+        }
+        this.processor = new BatchProcessor(options, null);
+        this.listener = listener;
+        // Пара пакетов вперед: ядра не простаивают, а всплеск из сотен файлов ждет на диске, а не в памяти
+        this.maxBatch = options.getParallelism() * 2;
+        this.queue = new ArrayBlockingQueue<>(maxBatch);
+    }
+
+    // Работает, пока поток не прерван. Все, что уже лежит в папке, тоже обрабатывается
+    // (обработанное раньше пропускается по журналу в папке результатов)
+    public void run() throws IOException, InterruptedException {
+        Thread worker = new Thread(this::drainQueue, "watch-worker");
+        worker.setDaemon(true);
+        worker.start();
+
+        try (WatchService watcher = FileSystems.getDefault().newWatchService()) {
+            Map<WatchKey, Path> dirs = new HashMap<>();
+            register(watcher, inbox, dirs);
+            rescan(inbox);
+
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key = watcher.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                boolean overflow = false;
+                while (key != null) {
+                    Path dir = dirs.get(key);
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW || dir == null) {
+                            overflow = true;
+                            continue;
+                        }
+                        Path child = dir.resolve((Path) event.context());
+                        if (Files.isDirectory(child)) {
+                            // Новая подпапка: следим и за ней, а файлы, попавшие туда до регистрации, забираем обходом
+                            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+                                register(watcher, child, dirs);
+                                rescan(child);
+                            }
+                        } else {
+                            track(child);
+                        }
+                    }
+                    if (!key.reset()) dirs.remove(key);
+                    key = watcher.poll();
+                }
+                if (overflow) rescan(inbox);
+                enqueueStable();
+                if (!worker.isAlive()) throw new IllegalStateException("watch worker stopped");
+            }
+        } catch (ClosedWatchServiceException e) {
+            // Закрыли снаружи — выходим
+        } finally {
+            worker.interrupt();
+        }
+    }
+
+    // Забирает из очереди все, что есть (но не больше пакета), и прогоняет через обычную пакетную обработку
+    private void drainQueue() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                List<File> batch = new ArrayList<>();
+                batch.add(queue.take());
+                queue.drainTo(batch, maxBatch - 1);
+                try {
+                    processor.process(batch, outputDir, listener);
+                } finally {
+                    for (File file : batch) queued.remove(file.toPath());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void register(WatchService watcher, Path root, Map<WatchKey, Path> dirs) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                // Результаты внутри папки входящих не должны попадать обратно в обработку
+                if (isOutput(dir)) return FileVisitResult.SKIP_SUBTREE;
+                WatchKey key = dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+                dirs.put(key, dir);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    // Те же правила отбора, что у окна и консоли
+    private void rescan(Path root) {
+        List<File> files = new ArrayList<>();
+        InputFiles.collect(root.toFile(), files);
+        for (File file : files) track(file.toPath());
+    }
+
+    private void track(Path path) {
+        Path file = path.toAbsolutePath().normalize();
+        if (!InputFiles.isSupported(file.toFile()) || isOutput(file)) return;
+        File f = file.toFile();
+        if (!f.isFile()) return;
+        if (signature(f).equals(queued.get(file))) return;
+        if (!pending.containsKey(file)) pending.put(file, new Pending(f.length(), f.lastModified(), System.currentTimeMillis()));
+    }
+
+    // Отдает в очередь файлы, которые не менялись STABLE_MILLIS. put ждет, если очередь полна, — это и есть backpressure
+    private void enqueueStable() throws InterruptedException {
+        long now = System.currentTimeMillis();
+        for (Iterator<Map.Entry<Path, Pending>> it = pending.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Path, Pending> e = it.next();
+            File f = e.getKey().toFile();
+            Pending p = e.getValue();
+            if (!f.isFile()) {
+                it.remove();
+                continue;
+            }
+            long size = f.length();
+            long modified = f.lastModified();
+            if (size != p.size || modified != p.modified) {
+                p.size = size;
+                p.modified = modified;
+                p.changedAt = now;
+            } else if (size > 0 && now - p.changedAt >= STABLE_MILLIS) {
+                queue.put(f);
+                queued.put(e.getKey(), signature(f));
+                it.remove();
+            }
+        }
+    }
+
+    private boolean isOutput(Path path) {
+        return path.startsWith(outputDir.toPath().toAbsolutePath().normalize());
+    }
+
+    private static String signature(File f) {
+        return f.length() + "|" + f.lastModified();
+    }
+
+    private static final class Pending {
+        long size;
+        long modified;
+        long changedAt;
+
+        Pending(long size, long modified, long changedAt) {
+            this.size = size;
+            this.modified = modified;
+            this.changedAt = changedAt;
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package org.example;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+// Набор водяных знаков, скомпилированный один раз в автомат Ахо-Корасик (DFA по ASCII без учета регистра).
+// Один проход по тексту/байтам находит любой из образцов, без toLowerCase и без выделения памяти.
+// Потокобезопасен: после создания только читается.
+public final class WatermarkMatcher {
+
+    public static final WatermarkMatcher DEFAULT = of("oceanofpdf.com", "oceanofpdf");
+
+    private static final int ALPHABET = 128;
+
+    private final List<String> patterns;
+    private final int[] transitions;   // [состояние * ALPHABET + символ] -> следующее состояние
+    private final int[] longestMatch;  // длина самого длинного образца, заканчивающегося в состоянии (0 — нет)
+
+    private WatermarkMatcher(List<String> patterns, int[] transitions, int[] longestMatch) {
+        this.patterns = patterns;
+        this.transitions = transitions;
+        this.longestMatch = longestMatch;
+    }
+
+    public static WatermarkMatcher of(String... patterns) {
+        return of(Arrays.asList(patterns));
+    }
+
+    public static WatermarkMatcher of(List<String> patterns) {
+        if (patterns.isEmpty()) throw new IllegalArgumentException("at least one watermark pattern is required");
+
+        // --- Бор (trie) ---
+        List<int[]> gotoTable = new ArrayList<>();
+        List<Integer> terminal = new ArrayList<>();
+        gotoTable.add(newRow());
+        terminal.add(0);
+
+        List<String> normalized = new ArrayList<>();
+        for (String pattern : patterns) {
+            if (pattern.isEmpty()) throw new IllegalArgumentException("empty watermark pattern");
+            String lower = pattern.toLowerCase(Locale.ROOT);
+            normalized.add(lower);
+
+            int state = 0;
+            for (int i = 0; i < lower.length(); i++) {
+                char c = lower.charAt(i);
+                if (c >= ALPHABET) throw new IllegalArgumentException("watermark pattern must be ASCII: " + pattern);
+                int next = gotoTable.get(state)[c];
+                if (next < 0) {
+                    next = gotoTable.size();
+                    gotoTable.add(newRow());
+                    terminal.add(0);
+                    gotoTable.get(state)[c] = next;
+                }
+                state = next;
+            }
+            terminal.set(state, Math.max(terminal.get(state), lower.length()));
+        }
+
+        // --- Суффиксные ссылки и полный DFA (обход в ширину) ---
+        int states = gotoTable.size();
+        int[] transitions = new int[states * ALPHABET];
+        int[] longest = new int[states];
+        int[] fail = new int[states];
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+
+        for (int c = 0; c < ALPHABET; c++) {
+            int next = gotoTable.get(0)[c];
+            if (next < 0) {
+                transitions[c] = 0;
+            } else {
+                transitions[c] = next;
+                fail[next] = 0;
+                queue.add(next);
+            }
+        }
+        longest[0] = 0;
+
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            longest[state] = Math.max(terminal.get(state), longest[fail[state]]);
+            for (int c = 0; c < ALPHABET; c++) {
+                int next = gotoTable.get(state)[c];
+                if (next < 0) {
+                    transitions[state * ALPHABET + c] = transitions[fail[state] * ALPHABET + c];
+                } else {
+                    transitions[state * ALPHABET + c] = next;
+                    fail[next] = transitions[fail[state] * ALPHABET + c];
+                    queue.add(next);
+                }
+            }
+        }
+
+        return new WatermarkMatcher(Collections.unmodifiableList(normalized), transitions, longest);
+    }
+
+    private static int[] newRow() {
+        int[] row = new int[ALPHABET];
+        Arrays.fill(row, -1);
+        return row;
+    }
+
+    // Образцы в нижнем регистре, в порядке задания
+    public List<String> getPatterns() {
+        return patterns;
+    }
+
+    // --- Потоковый интерфейс: состояние хранит вызывающий (например, префильтр между строками content stream) ---
+
+    public int initialState() {
+        return 0;
+    }
+
+    // c — символ или байт (0..255); все, что вне ASCII, сбрасывает автомат в корень
+    public int next(int state, int c) {
+        if (c >= 'A' && c <= 'Z') c += 'a' - 'A';
+        if (c < 0 || c >= ALPHABET) return 0;
+        return transitions[state * ALPHABET + c];
+    }
+
+    public boolean isMatch(int state) {
+        return longestMatch[state] > 0;
+    }
+
+    // --- Готовые проверки ---
+
+    public boolean containsIn(CharSequence text) {
+        if (text == null) return false;
+        int state = 0;
+        for (int i = 0, n = text.length(); i < n; i++) {
+            state = next(state, text.charAt(i));
+            if (longestMatch[state] > 0) return true;
+        }
+        return false;
+    }
+
+    public boolean containsIn(byte[] data) {
+        return containsIn(data, 0, data.length);
+    }
+
+    public boolean containsIn(byte[] data, int offset, int length) {
+        int state = 0;
+        for (int i = offset, end = offset + length; i < end; i++) {
+            state = next(state, data[i] & 0xFF);
+            if (longestMatch[state] > 0) return true;
+        }
+        return false;
+    }
+
+    // Вызывается для каждого найденного вхождения [start, end)
+    public interface MatchConsumer {
+        void match(int start, int end);
+    }
+
+    // Непересекающиеся вхождения слева направо; из перекрывающихся берется самое левое, при равенстве — самое длинное
+    // ("oceanofpdf.com" целиком, а не только "oceanofpdf")
+    public void findAll(CharSequence text, MatchConsumer consumer) {
+        int state = 0;
+        int pendingStart = -1;
+        int pendingEnd = -1;
+        for (int i = 0, n = text.length(); i < n; i++) {
+            state = next(state, text.charAt(i));
+            int length = longestMatch[state];
+            if (length == 0) continue;
+
+            int start = i + 1 - length;
+            int end = i + 1;
+            if (pendingStart < 0 || start <= pendingStart) {
+                pendingStart = start;
+                pendingEnd = end;
+            } else if (start >= pendingEnd) {
+                consumer.match(pendingStart, pendingEnd);
+                pendingStart = start;
+                pendingEnd = end;
+            }
+            // иначе вхождение внутри уже найденного — пропускаем
+        }
+        if (pendingStart >= 0) consumer.match(pendingStart, pendingEnd);
+    }
+
+    // Удаляет все вхождения вместе с окружающими пробелами (как "\\s*образец\\s*")
+    public String removeAll(String text) {
+        StringBuilder result = new StringBuilder(text.length());
+        int[] copied = {0};
+        findAll(text, (start, end) -> {
+            while (start > copied[0] && isRegexSpace(text.charAt(start - 1))) start--;
+            while (end < text.length() && isRegexSpace(text.charAt(end))) end++;
+            result.append(text, copied[0], start);
+            copied[0] = Math.max(copied[0], end);
+        });
+        if (copied[0] == 0) return text;
+        result.append(text, copied[0], text.length());
+        return result.toString();
+    }
+
+    // Пробельные символы \s из java.util.regex
+    private static boolean isRegexSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == 0x0B || c == '\f' || c == '\r';
+    }
+}
@@ -0,0 +1,354 @@
+package org.example;
+
+import org.apache.fontbox.cmap.CMap;
+import org.apache.fontbox.cmap.CMapParser;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.font.encoding.DictionaryEncoding;
+import org.apache.pdfbox.pdmodel.font.encoding.Encoding;
+import org.apache.pdfbox.pdmodel.font.encoding.GlyphList;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.text.Normalizer;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+// Дешевая предпроверка страницы: ищем водяной знак прямо в строках content stream (и во вложенных Form XObject),
+// не запуская PDFTextStripper. Строки ( ) и < > декодируются через кодировку простого шрифта (Encoding/ToUnicode).
+// Один экземпляр на документ: таблицы шрифтов кэшируются по идентичности словаря шрифта.
+public class WatermarkPrefilter {
+
+    public enum Verdict {
+        NO_WATERMARK, // Водяного знака точно нет — полную экстракцию можно пропустить
+        CANDIDATE,    // Нашли водяной знак в строках
+        UNSAFE        // Шрифт не декодируется надежно (Type0, Type3, встроенная кодировка) — нужна полная экстракция
+    }
+
+    // Шрифт, который мы не умеем декодировать
+    private static final String[] UNSAFE_FONT = new String[0];
+
+    // Защита от бесконечной рекурсии в кривых PDF
+    private static final int MAX_FORM_DEPTH = 8;
+
+    private final WatermarkMatcher matcher;
+    private final Map<COSDictionary, String[]> fontTables = new IdentityHashMap<>();
+
+    public WatermarkPrefilter(WatermarkMatcher matcher) {
+        this.matcher = matcher;
+    }
+
+    public Verdict check(PDPage page) throws IOException {
+        PDResources resources = page.getResources();
+        COSDictionary res = (resources != null) ? resources.getCOSObject() : null;
+
+        byte[] content;
+        try (InputStream in = page.getContents()) {
+            content = in.readAllBytes();
+        }
+
+        Scan scan = new Scan();
+        scan.matcher = matcher;
+        scan.matchState = matcher.initialState();
+        scan.visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        scanContent(content, res, null, scan, 0);
+        if (scan.matched) return Verdict.CANDIDATE;
+        return scan.unsafe ? Verdict.UNSAFE : Verdict.NO_WATERMARK;
+    }
+
+    // Состояние сканирования одной страницы
+    private static class Scan {
+        WatermarkMatcher matcher;
+        int matchState;
+        boolean matched;
+        boolean unsafe;
+        Set<COSStream> visited;
+
+        boolean done() {
+            return matched || unsafe;
+        }
+    }
+
+    // Простой лексер content stream: нас интересуют только строки, имена и операторы Tf / Do / BI
+    private void scanContent(byte[] data, COSDictionary res, String[] inheritedFont, Scan scan, int depth) throws IOException {
+        String[] font = inheritedFont;
+        String lastName = null;
+        int n = data.length;
+        int i = 0;
+
+        while (i < n && !scan.done()) {
+            int b = data[i] & 0xFF;
+
+            if (isWhitespace(b)) {
+                i++;
+            } else if (b == '%') {
+                while (i < n && data[i] != '\n' && data[i] != '\r') i++;
+            } else if (b == '(') {
+                i = scanLiteral(data, i + 1, font, scan);
+            } else if (b == '<') {
+                if (i + 1 < n && data[i + 1] == '<') {
+                    i += 2;
+                } else {
+                    i = scanHex(data, i + 1, font, scan);
+                }
+            } else if (b == '>' || b == '[' || b == ']' || b == '{' || b == '}' || b == ')') {
+                i++;
+            } else if (b == '/') {
+                int start = ++i;
+                while (i < n && !isWhitespace(data[i] & 0xFF) && !isDelimiter(data[i] & 0xFF)) i++;
+                lastName = new String(data, start, i - start, StandardCharsets.ISO_8859_1);
+            } else {
+                int start = i;
+                while (i < n && !isWhitespace(data[i] & 0xFF) && !isDelimiter(data[i] & 0xFF)) i++;
+                if (i == start) {
+                    i++;
+                    continue;
+                }
+                int len = i - start;
+                if (len == 2 && data[start] == 'T' && data[start + 1] == 'f') {
+                    font = fontTable(res, lastName);
+                } else if (len == 2 && data[start] == 'D' && data[start + 1] == 'o') {
+                    scanForm(res, lastName, font, scan, depth);
+                } else if (len == 2 && data[start] == 'B' && data[start + 1] == 'I') {
+                    i = skipInlineImage(data, i);
+                }
+            }
+        }
+    }
+
+    private void scanForm(COSDictionary res, String name, String[] font, Scan scan, int depth) throws IOException {
+        if (res == null || name == null || depth >= MAX_FORM_DEPTH) return;
+        COSDictionary xobjects = res.getCOSDictionary(COSName.XOBJECT);
+        if (xobjects == null) return;
+        COSBase obj = xobjects.getDictionaryObject(COSName.getPDFName(name));
+        if (!(obj instanceof COSStream)) return;
+        COSStream stream = (COSStream) obj;
+        if (!COSName.FORM.equals(stream.getCOSName(COSName.SUBTYPE))) return;
+        if (!scan.visited.add(stream)) return;
+
+        COSDictionary formRes = stream.getCOSDictionary(COSName.RESOURCES);
+        byte[] content;
+        try (InputStream in = stream.createInputStream()) {
+            content = in.readAllBytes();
+        }
+        scanContent(content, formRes != null ? formRes : res, font, scan, depth + 1);
+    }
+
+    // Литеральная строка ( ... ) с вложенными скобками и escape-последовательностями
+    private static int scanLiteral(byte[] data, int i, String[] font, Scan scan) {
+        int n = data.length;
+        int depth = 1;
+        while (i < n && depth > 0) {
+            int b = data[i++] & 0xFF;
+            if (b == '\\') {
+                if (i >= n) break;
+                int e = data[i++] & 0xFF;
+                switch (e) {
+                    case 'n': emit('\n', font, scan); break;
+                    case 'r': emit('\r', font, scan); break;
+                    case 't': emit('\t', font, scan); break;
+                    case 'b': emit('\b', font, scan); break;
+                    case 'f': emit('\f', font, scan); break;
+                    case '\r':
+                        if (i < n && data[i] == '\n') i++; // перенос строки внутри строки
+                        break;
+                    case '\n':
+                        break;
+                    default:
+                        if (e >= '0' && e <= '7') {
+                            int code = e - '0';
+                            for (int k = 0; k < 2 && i < n && data[i] >= '0' && data[i] <= '7'; k++) {
+                                code = code * 8 + (data[i++] - '0');
+                            }
+                            emit(code & 0xFF, font, scan);
+                        } else {
+                            emit(e, font, scan); // \( \) \\ и прочее
+                        }
+                }
+            } else if (b == '(') {
+                depth++;
+                emit(b, font, scan);
+            } else if (b == ')') {
+                if (--depth > 0) emit(b, font, scan);
+            } else {
+                emit(b, font, scan);
+            }
+        }
+        return i;
+    }
+
+    // Hex-строка < ... >
+    private static int scanHex(byte[] data, int i, String[] font, Scan scan) {
+        int n = data.length;
+        int high = -1;
+        while (i < n) {
+            int b = data[i++] & 0xFF;
+            if (b == '>') break;
+            int digit = Character.digit(b, 16);
+            if (digit < 0) continue; // пробелы внутри hex-строки
+            if (high < 0) {
+                high = digit;
+            } else {
+                emit((high << 4) | digit, font, scan);
+                high = -1;
+            }
+        }
+        if (high >= 0) emit(high << 4, font, scan); // нечетное число цифр дополняется нулем
+        return i;
+    }
+
+    // Пропускаем бинарные данные inline-картинки: BI ... ID <данные> EI
+    private static int skipInlineImage(byte[] data, int i) {
+        int n = data.length;
+        while (i + 1 < n && !(data[i] == 'I' && data[i + 1] == 'D' && isWhitespace(data[i - 1] & 0xFF))) i++;
+        i += 3;
+        while (i + 2 < n) {
+            if (isWhitespace(data[i] & 0xFF) && data[i + 1] == 'E' && data[i + 2] == 'I'
+                    && (i + 3 == n || isWhitespace(data[i + 3] & 0xFF) || isDelimiter(data[i + 3] & 0xFF))) {
+                return i + 3;
+            }
+            i++;
+        }
+        return n;
+    }
+
+    // Один байт строки -> символы текста через таблицу шрифта -> автомат поиска
+    private static void emit(int code, String[] font, Scan scan) {
+        if (scan.done()) return;
+        String text;
+        if (font == null) {
+            text = null; // шрифт еще не выбран (строки вне текста, например у BDC) — берем байт как есть
+        } else if (font == UNSAFE_FONT || font[code] == null) {
+            scan.unsafe = true;
+            return;
+        } else {
+            text = font[code];
+        }
+
+        if (text == null) {
+            feed((char) code, scan);
+        } else {
+            for (int k = 0; k < text.length() && !scan.matched; k++) feed(text.charAt(k), scan);
+        }
+    }
+
+    private static void feed(char c, Scan scan) {
+        scan.matchState = scan.matcher.next(scan.matchState, c);
+        if (scan.matcher.isMatch(scan.matchState)) scan.matched = true;
+    }
+
+    // --- Таблицы шрифтов: код (0..255) -> текст, как его увидит PDFTextStripper. null — код не декодируется ---
+
+    private String[] fontTable(COSDictionary res, String name) {
+        if (res == null || name == null) return UNSAFE_FONT;
+        COSDictionary fonts = res.getCOSDictionary(COSName.FONT);
+        if (fonts == null) return UNSAFE_FONT;
+        COSBase obj = fonts.getDictionaryObject(COSName.getPDFName(name));
+        if (!(obj instanceof COSDictionary)) return UNSAFE_FONT;
+        COSDictionary font = (COSDictionary) obj;
+
+        String[] table = fontTables.get(font);
+        if (table == null) {
+            try {
+                table = buildFontTable(font);
+            } catch (Exception e) {
+                table = UNSAFE_FONT; // Не разобрали шрифт — пусть решает полная экстракция
+            }
+            fontTables.put(font, table);
+        }
+        return table;
+    }
+
+    private static String[] buildFontTable(COSDictionary font) throws IOException {
+        COSName subtype = font.getCOSName(COSName.SUBTYPE);
+        // Составные (Type0) и Type3 шрифты — многобайтовые коды и свои процедуры глифов
+        if (!COSName.TYPE1.equals(subtype) && !COSName.MM_TYPE1.equals(subtype) && !COSName.TRUE_TYPE.equals(subtype)) {
+            return UNSAFE_FONT;
+        }
+
+        String[] table = new String[256];
+        Encoding encoding = readEncoding(font, subtype);
+        if (encoding != null) {
+            GlyphList glyphs = GlyphList.getAdobeGlyphList();
+            for (int code = 0; code < 256; code++) {
+                String glyph = encoding.getName(code);
+                if (".notdef".equals(glyph)) {
+                    table[code] = "";
+                } else {
+                    String unicode = glyphs.toUnicode(glyph);
+                    if (unicode != null) table[code] = normalize(unicode);
+                }
+            }
+        }
+
+        // ToUnicode главнее кодировки — PDFTextStripper сначала смотрит туда
+        COSBase toUnicode = font.getDictionaryObject(COSName.TO_UNICODE);
+        if (toUnicode instanceof COSStream) {
+            CMap cmap;
+            try (InputStream in = ((COSStream) toUnicode).createInputStream()) {
+                cmap = new CMapParser(true).parse(in);
+            }
+            for (int code = 0; code < 256; code++) {
+                String unicode = cmap.toUnicode(code);
+                if (unicode != null) table[code] = normalize(unicode);
+            }
+        }
+        return table;
+    }
+
+    // Кодировка простого шрифта; null — кодировка встроена в сам шрифт и без его разбора неизвестна
+    private static Encoding readEncoding(COSDictionary font, COSName subtype) {
+        COSBase enc = font.getDictionaryObject(COSName.ENCODING);
+        boolean symbolic = isSymbolic(font);
+
+        if (enc instanceof COSName) {
+            return Encoding.getInstance((COSName) enc);
+        }
+        if (enc instanceof COSDictionary) {
+            COSDictionary dict = (COSDictionary) enc;
+            if (dict.getCOSName(COSName.BASE_ENCODING) == null && symbolic) {
+                return null; // база — встроенная кодировка шрифта
+            }
+            return new DictionaryEncoding(dict, !symbolic, null);
+        }
+
+        // Без /Encoding: у стандартных невстроенных Type1 (кроме Symbol/ZapfDingbats) — StandardEncoding
+        COSDictionary descriptor = font.getCOSDictionary(COSName.FONT_DESC);
+        boolean embedded = descriptor != null && (descriptor.containsKey(COSName.FONT_FILE)
+                || descriptor.containsKey(COSName.FONT_FILE2) || descriptor.containsKey(COSName.FONT_FILE3));
+        if (COSName.TRUE_TYPE.equals(subtype) || embedded || symbolic) return null;
+        String baseFont = font.getNameAsString(COSName.BASE_FONT);
+        if (baseFont != null && (baseFont.contains("Symbol") || baseFont.contains("Dingbats"))) return null;
+        return Encoding.getInstance(COSName.STANDARD_ENCODING);
+    }
+
+    private static boolean isSymbolic(COSDictionary font) {
+        COSDictionary descriptor = font.getCOSDictionary(COSName.FONT_DESC);
+        return descriptor != null && (descriptor.getInt(COSName.FLAGS, 0) & 4) != 0;
+    }
+
+    // Лигатуры (U+FB00..) PDFTextStripper раскладывает через NFKC — делаем так же
+    private static String normalize(String unicode) {
+        for (int k = 0; k < unicode.length(); k++) {
+            char c = unicode.charAt(k);
+            if (c >= 0xFB00 && c <= 0xFDFF) return Normalizer.normalize(unicode, Normalizer.Form.NFKC);
+        }
+        return unicode;
+    }
+
+    private static boolean isWhitespace(int b) {
+        return b == ' ' || b == '\n' || b == '\r' || b == '\t' || b == '\f' || b == 0;
+    }
+
+    private static boolean isDelimiter(int b) {
+        return b == '(' || b == ')' || b == '<' || b == '>' || b == '[' || b == ']'
+                || b == '{' || b == '}' || b == '/' || b == '%';
+    }
+}